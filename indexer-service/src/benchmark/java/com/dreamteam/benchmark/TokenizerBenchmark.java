@@ -6,7 +6,10 @@ import java.nio.file.*;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.*;
+import com.dreamteam.core.BookTokenizer;
 import com.dreamteam.core.InvertedIndexer;
+import com.dreamteam.core.TermTable;
+import com.dreamteam.core.Tokenizer;
 
 @BenchmarkMode(Mode.AverageTime)
 @OutputTimeUnit(TimeUnit.MILLISECONDS)
@@ -22,6 +25,7 @@ public class TokenizerBenchmark {
     private Matcher matcher;
 
     private InvertedIndexer indexer;
+    private Tokenizer tokenizer;
 
     @Param({"100", "1000", "5000"})
     private int numDocs;
@@ -34,6 +38,7 @@ public class TokenizerBenchmark {
             La inteligencia artificial permite el análisis masivo de datos, el aprendizaje automático
             y la generación de modelos predictivos con alta eficiencia computacional.
             """;
+        tokenizer = new Tokenizer();
         texts = new ArrayList<>();
         for (int i = 0; i < numDocs; i++) {
             texts.add(base.repeat(3));
@@ -63,4 +68,32 @@ public class TokenizerBenchmark {
         }
         return allUnique;
     }
+
+    @Benchmark
+    public int tokenizeDocumentsScanner() {
+        int totalTokens = 0;
+        for (String text : texts) {
+            totalTokens += tokenizer.tokenize(text, (buffer, length, position) -> {});
+        }
+        return totalTokens;
+    }
+
+    @Benchmark
+    public int uniqueTokensPerDocumentScanner() {
+        TermTable termTable = new TermTable();
+        for (String text : texts) {
+            tokenizer.tokenize(text, (buffer, length, position) -> termTable.intern(buffer, length));
+        }
+        return termTable.size();
+    }
+
+    @Benchmark
+    public int termPositionsPerDocumentScanner() {
+        BookTokenizer bookTokenizer = new BookTokenizer();
+        int totalTerms = 0;
+        for (String text : texts) {
+            totalTerms += bookTokenizer.tokenize(text).size();
+        }
+        return totalTerms;
+    }
 }
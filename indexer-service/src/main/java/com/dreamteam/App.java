@@ -1,8 +1,11 @@
 package com.dreamteam;
 
+import java.nio.file.Paths;
 import java.util.Map;
 
 import com.dreamteam.config.ConfigLoader;
+import com.dreamteam.merge.MergeScheduler;
+import com.dreamteam.merge.TieredMergePolicy;
 import com.dreamteam.service.IndexerService;
 
 import io.javalin.Javalin;
@@ -17,15 +20,43 @@ public class App {
         String dbPath = ConfigLoader.getProperty("db.path", "datamart/datamart.db");
         String indexProgressPath = ConfigLoader.getProperty("index.progress.path", "indexer/progress.json");
         String catalogProgressPath = ConfigLoader.getProperty("catalog.progress.path", "metadata/progress_parser.json");
+        String indexMode = ConfigLoader.getProperty("index.mode", "segment");
+        String segmentsDir = ConfigLoader.getProperty("index.segments.dir", "indexer/segments");
+        int ramBudgetMb = ConfigLoader.getIntProperty("index.ram.budget.mb", 64);
+        int indexThreads = ConfigLoader.getIntProperty("index.threads", 0);
+        int mergeFactor = ConfigLoader.getIntProperty("index.merge.factor", 8);
+        int mergeFloorMb = ConfigLoader.getIntProperty("index.merge.floor.mb", 2);
+        int mergeMaxDeletedPercent = ConfigLoader.getIntProperty("index.merge.max.deleted.percent", 30);
+        int mergeMaxSegmentMb = ConfigLoader.getIntProperty("index.merge.max.segment.mb", 1024);
+        int mergeMaxMbPerSec = ConfigLoader.getIntProperty("index.merge.max.mb.per.sec", 20);
+        int mergeIntervalSeconds = ConfigLoader.getIntProperty("index.merge.interval.seconds", 30);
         int port = ConfigLoader.getIntProperty("server.port", 7002);
 
+        boolean segmentMode = !"tsv".equalsIgnoreCase(indexMode);
+
+        MergeScheduler mergeScheduler = null;
+        if (segmentMode) {
+            mergeScheduler = new MergeScheduler(
+                    Paths.get(segmentsDir),
+                    new TieredMergePolicy(mergeFactor, mergeFloorMb * 1024L * 1024L, mergeMaxDeletedPercent / 100.0,
+                            mergeMaxSegmentMb * 1024L * 1024L),
+                    mergeMaxMbPerSec * 1024L * 1024L,
+                    mergeIntervalSeconds
+            );
+            mergeScheduler.start();
+        }
+
         IndexerService service = new IndexerService(
                 datalakePath,
                 indexOutputDir,
                 catalogOutputPath,
                 dbPath,
                 indexProgressPath,
-                catalogProgressPath
+                catalogProgressPath,
+                segmentMode ? segmentsDir : null,
+                ramBudgetMb * 1024L * 1024L,
+                indexThreads,
+                mergeScheduler
         );
 
         Javalin app = Javalin.create(config ->
@@ -55,8 +86,10 @@ public class App {
                 ctx.json(service.rebuildIndex())
         );
 
+        MergeScheduler merges = mergeScheduler;
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.out.println("Shutting down Indexer Service...");
+            if (merges != null) merges.shutdown();
             app.stop();
         }));
     }
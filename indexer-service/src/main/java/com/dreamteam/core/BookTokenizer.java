@@ -0,0 +1,63 @@
+package com.dreamteam.core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Collects the positions of every term of one book, keyed by interned term id. The term
+// table and position arrays are reused across books, so a long-lived instance (one per
+// indexing thread) only allocates for new vocabulary and for the per-book result.
+public final class BookTokenizer implements Tokenizer.TokenSink {
+
+    private final Tokenizer tokenizer = new Tokenizer();
+    private final TermTable termTable = new TermTable();
+
+    private int[][] positions = new int[1024][];
+    private int[] counts = new int[1024];
+    private int[] touched = new int[1024];
+    private int touchedCount;
+
+    public Map<String, int[]> tokenize(CharSequence text) {
+        tokenizer.tokenize(text, this);
+
+        Map<String, int[]> termPositions = new HashMap<>(touchedCount * 2);
+        for (int i = 0; i < touchedCount; i++) {
+            int id = touched[i];
+            termPositions.put(termTable.term(id), Arrays.copyOf(positions[id], counts[id]));
+            counts[id] = 0;
+        }
+        touchedCount = 0;
+        return termPositions;
+    }
+
+    @Override
+    public void accept(char[] buffer, int length, int position) {
+        int id = termTable.intern(buffer, length);
+
+        if (id >= counts.length) {
+            int capacity = Math.max(id + 1, counts.length * 2);
+            positions = Arrays.copyOf(positions, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+
+        int[] termPositions = positions[id];
+        if (termPositions == null) {
+            termPositions = new int[8];
+            positions[id] = termPositions;
+        }
+
+        int count = counts[id];
+        if (count == 0) {
+            if (touchedCount == touched.length) {
+                touched = Arrays.copyOf(touched, touchedCount * 2);
+            }
+            touched[touchedCount++] = id;
+        }
+        if (count == termPositions.length) {
+            termPositions = Arrays.copyOf(termPositions, count * 2);
+            positions[id] = termPositions;
+        }
+        termPositions[count] = position;
+        counts[id] = count + 1;
+    }
+}
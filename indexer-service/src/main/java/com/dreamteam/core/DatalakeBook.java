@@ -0,0 +1,14 @@
+package com.dreamteam.core;
+
+import java.nio.file.Path;
+
+public record DatalakeBook(String day, String hour, int bookId, Path folder) {
+
+    public Path bodyFile() {
+        return folder.resolve("body.txt");
+    }
+
+    public Path headerFile() {
+        return folder.resolve("header.txt");
+    }
+}
@@ -0,0 +1,121 @@
+package com.dreamteam.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Read side of the manifest.tsv that ingestion appends to, one line per book:
+//
+//   bookId  day  hour  rawBytes  headerBytes  bodyBytes  ingestedAt
+//
+// A later line for the same book wins; malformed lines, such as one torn by a crash while
+// ingestion appended it, are skipped with a warning. Without a manifest the day/hour/book folders
+// are walked instead, as before; folders without a body.txt (failed downloads) are skipped.
+public class DatalakeManifest {
+    public static final String FILE_NAME = "manifest.tsv";
+
+    // Numeric order for digit strings without parsing them.
+    public static final Comparator<String> HOUR_ORDER =
+            Comparator.comparingInt(String::length).thenComparing(Comparator.naturalOrder());
+
+    private static final Comparator<DatalakeBook> DATALAKE_ORDER = Comparator
+            .comparing(DatalakeBook::day)
+            .thenComparing(DatalakeBook::hour, HOUR_ORDER)
+            .thenComparingInt(DatalakeBook::bookId);
+
+    private final Map<Integer, DatalakeBook> books;
+
+    private DatalakeManifest(Map<Integer, DatalakeBook> books) {
+        this.books = books;
+    }
+
+    public static DatalakeManifest load(Path datalake) throws IOException {
+        Path file = datalake.resolve(FILE_NAME);
+        Map<Integer, DatalakeBook> books = new HashMap<>();
+
+        if (Files.exists(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                int lineNumber = 0;
+                while ((line = reader.readLine()) != null) {
+                    lineNumber++;
+                    if (line.isBlank()) continue;
+                    DatalakeBook book = parse(datalake, line);
+                    if (book == null) {
+                        System.err.println("Warning: skipping malformed line " + lineNumber + " of " + file);
+                        continue;
+                    }
+                    books.put(book.bookId(), book);
+                }
+            }
+        } else if (Files.isDirectory(datalake)) {
+            for (DatalakeBook book : scan(datalake)) {
+                books.put(book.bookId(), book);
+            }
+        }
+
+        return new DatalakeManifest(books);
+    }
+
+    public DatalakeBook find(int bookId) {
+        return books.get(bookId);
+    }
+
+    // All books in day, hour, book id order, the order progress is tracked in.
+    public List<DatalakeBook> books() {
+        List<DatalakeBook> sorted = new ArrayList<>(books.values());
+        sorted.sort(DATALAKE_ORDER);
+        return sorted;
+    }
+
+    public int size() {
+        return books.size();
+    }
+
+    // Null unless the line has all seven fields with numeric ids and sizes and a full timestamp.
+    private static DatalakeBook parse(Path datalake, String line) {
+        String[] fields = line.split("\t");
+        if (fields.length != 7) return null;
+        try {
+            for (int i = 3; i < 6; i++) Long.parseLong(fields[i]);
+            Instant.parse(fields[6]);
+            int bookId = Integer.parseInt(fields[0]);
+            return new DatalakeBook(fields[1], fields[2], bookId,
+                    datalake.resolve(fields[1]).resolve(fields[2]).resolve(fields[0]));
+        } catch (NumberFormatException | DateTimeParseException exception) {
+            return null;
+        }
+    }
+
+    private static List<DatalakeBook> scan(Path datalake) throws IOException {
+        List<DatalakeBook> found = new ArrayList<>();
+        for (Path dayFolder : listDirectories(datalake)) {
+            for (Path hourFolder : listDirectories(dayFolder)) {
+                for (Path bookFolder : listDirectories(hourFolder)) {
+                    String name = bookFolder.getFileName().toString();
+                    if (!name.matches("\\d+") || !Files.exists(bookFolder.resolve("body.txt"))) continue;
+                    found.add(new DatalakeBook(dayFolder.getFileName().toString(),
+                            hourFolder.getFileName().toString(), Integer.parseInt(name), bookFolder));
+                }
+            }
+        }
+        return found;
+    }
+
+    private static List<Path> listDirectories(Path folder) throws IOException {
+        try (Stream<Path> children = Files.list(folder)) {
+            return children.filter(Files::isDirectory).collect(Collectors.toList());
+        }
+    }
+}
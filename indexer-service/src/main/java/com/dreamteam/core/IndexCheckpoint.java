@@ -0,0 +1,76 @@
+package com.dreamteam.core;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.dreamteam.progress.ProgressTracker;
+
+// Books may become durable out of order when several workers flush segments. The saved
+// progress only advances over the contiguous prefix of durable books; anything durable
+// beyond it is recorded as "indexed ahead" so a resumed run skips it instead of indexing it twice.
+//
+// books are all books past the saved progress, including those a previous run indexed ahead.
+// Those start out durable, so they stay recorded until the progress moves past them, however
+// many times the indexer is interrupted and resumed before it does.
+public class IndexCheckpoint {
+
+    private final List<DatalakeBook> books;
+    private final ProgressTracker progress;
+    private final String progressPath;
+    private final BitSet durable = new BitSet();
+    private final int resumed;
+    private int watermark;
+
+    public IndexCheckpoint(List<DatalakeBook> books, ProgressTracker progress, String progressPath) {
+        this.books = books;
+        this.progress = progress;
+        this.progressPath = progressPath;
+
+        Set<Integer> indexedAhead = new HashSet<>(progress.getIndexedAhead());
+        for (int seq = 0; seq < books.size(); seq++) {
+            if (indexedAhead.contains(books.get(seq).bookId())) durable.set(seq);
+        }
+        this.resumed = durable.cardinality();
+    }
+
+    // True for books a previous run already made durable; they must not be indexed again.
+    public synchronized boolean isDurable(int sequenceNumber) {
+        return durable.get(sequenceNumber);
+    }
+
+    public synchronized void markDurable(List<Integer> sequenceNumbers) {
+        for (int seq : sequenceNumbers) {
+            durable.set(seq);
+        }
+        while (durable.get(watermark)) {
+            watermark++;
+        }
+
+        if (watermark > 0) {
+            DatalakeBook last = books.get(watermark - 1);
+            progress.setLastDay(last.day());
+            progress.setLastHour(last.hour());
+            progress.setLastIndexedId(last.bookId());
+        }
+
+        List<Integer> ahead = new ArrayList<>();
+        for (int seq = durable.nextSetBit(watermark); seq >= 0; seq = durable.nextSetBit(seq + 1)) {
+            ahead.add(books.get(seq).bookId());
+        }
+        progress.setIndexedAhead(ahead.isEmpty() ? null : ahead);
+        progress.save(progressPath);
+    }
+
+    // Books this run still has to index.
+    public int pendingCount() {
+        return books.size() - resumed;
+    }
+
+    // Books made durable by this run.
+    public synchronized int durableCount() {
+        return durable.cardinality() - resumed;
+    }
+}
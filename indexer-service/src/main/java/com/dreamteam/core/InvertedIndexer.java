@@ -1,33 +1,53 @@
 package com.dreamteam.core;
 
 import java.io.IOException;
+import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 import com.dreamteam.progress.ProgressTracker;
 
 public class InvertedIndexer {
 
-    private static final Pattern WORD_PATTERN = Pattern.compile("\\b[a-záéíóúüñ]+\\b");
+    private static final String TSV_EXTENSION = ".tsv";
+    private static final String BOOK_TERMS_DIR = "books";
 
     private final String datalakePath;
     private final String outputDir;
     private final String progressPath;
+    private final String segmentsDir;
+    private final long ramBudgetBytes;
+    private final int threads;
 
     public InvertedIndexer(String datalakePath, String outputDir, String progressPath) {
+        this(datalakePath, outputDir, progressPath, null, 0, 1);
+    }
+
+    public InvertedIndexer(String datalakePath, String outputDir, String progressPath,
+                           String segmentsDir, long ramBudgetBytes, int threads) {
         this.datalakePath = datalakePath;
         this.outputDir = outputDir;
         this.progressPath = progressPath;
+        this.segmentsDir = segmentsDir;
+        this.ramBudgetBytes = ramBudgetBytes;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    public boolean isSegmentMode() {
+        return segmentsDir != null;
     }
 
     public void buildIndex() throws IOException {
 
-        Path datalake = Paths.get(datalakePath);
         Path outputDirectory = Paths.get(outputDir);
 
         Files.createDirectories(outputDirectory);
@@ -35,121 +55,366 @@ public class InvertedIndexer {
         ProgressTracker progress = ProgressTracker.load(progressPath);
         System.out.println("Last progress: " + progress);
 
-        List<Path> dayFolders = Files.list(datalake)
-                .filter(Files::isDirectory)
-                .sorted()
-                .collect(Collectors.toList());
+        List<DatalakeBook> books = listBooksAfterProgress(progress);
 
-        for (Path dayFolder : dayFolders) {
+        if (isSegmentMode()) {
+            buildSegments(books, progress);
+        } else {
+            Set<Integer> indexedAhead = new HashSet<>(progress.getIndexedAhead());
+            buildTsvIndex(outputDirectory,
+                    books.stream().filter(book -> !indexedAhead.contains(book.bookId())).toList(), progress);
+        }
 
-            String dayName = dayFolder.getFileName().toString();
+        System.out.printf("Indexing complete. Last indexed: %s/%s%n",
+                progress.getLastDay(), progress.getLastHour());
+    }
 
-            if (progress.getLastDay() != null && dayName.compareTo(progress.getLastDay()) < 0) {
-                continue;
-            }
+    // Indexes one book on its own. In segment mode it becomes a small delta segment whose
+    // publication marks the book's older postings deleted; in TSV mode only the term files of
+    // the terms the book has now, or had before, are rewritten.
+    public String updateBookIndex(int bookId) throws IOException {
 
-            List<Path> hourFolders = Files.list(dayFolder)
-                    .filter(Files::isDirectory)
-                    .sorted(Comparator.comparingInt(p -> {
-                        String name = p.getFileName().toString();
-                        return name.matches("\\d+") ? Integer.parseInt(name) : 0;
-                    }))
-                    .collect(Collectors.toList());
+        DatalakeBook book = DatalakeManifest.load(Paths.get(datalakePath)).find(bookId);
+        if (book == null) {
+            throw new IOException("Book ID " + bookId + " not found in datalake");
+        }
+        if (!Files.exists(book.bodyFile())) {
+            throw new IOException("body.txt not found for book ID " + bookId);
+        }
 
-            for (Path hourFolder : hourFolders) {
+        Map<String, int[]> termPositions = tokenizeBook(new BookTokenizer(), book.bodyFile());
 
-                String hourName = hourFolder.getFileName().toString();
+        if (isSegmentMode()) {
+            PostingAccumulator accumulator = new PostingAccumulator(ramBudgetBytes);
+            accumulator.addBook(bookId, termPositions);
+            String segment = new SegmentWriter(Paths.get(segmentsDir)).flush(accumulator);
 
-                if (dayName.equals(progress.getLastDay()) && progress.getLastHour() != null) {
-                    if (hourName.matches("\\d+") && progress.getLastHour().matches("\\d+")) {
-                        if (Integer.parseInt(hourName) < Integer.parseInt(progress.getLastHour())) {
-                            continue;
-                        }
-                    }
-                }
+            System.out.printf("Indexed book ID %d into delta segment %s (%d terms)%n",
+                    bookId, segment, termPositions.size());
+            return segment;
+        }
 
-                System.out.printf("Processing day/hour %s/%s ...%n", dayName, hourName);
+        Path outputDirectory = Paths.get(outputDir);
+        Files.createDirectories(outputDirectory);
+        int dropped = 0;
+        for (String term : previousTerms(outputDirectory, bookId)) {
+            if (!termPositions.containsKey(term)) {
+                rewriteTsvPosting(outputDirectory, term, bookId, null);
+                dropped++;
+            }
+        }
+        for (Map.Entry<String, int[]> entry : termPositions.entrySet()) {
+            rewriteTsvPosting(outputDirectory, entry.getKey(), bookId, entry.getValue());
+        }
+        writeBookTerms(outputDirectory, bookId, termPositions.keySet());
 
-                List<Path> bookFolders = Files.list(hourFolder)
-                        .filter(Files::isDirectory)
-                        .filter(p -> p.getFileName().toString().matches("\\d+"))
-                        .sorted(Comparator.comparingInt(p -> Integer.parseInt(p.getFileName().toString())))
-                        .collect(Collectors.toList());
+        System.out.printf("Indexed book ID %d into %d term files (dropped from %d)%n",
+                bookId, termPositions.size(), dropped);
+        return null;
+    }
 
-                for (Path bookFolder : bookFolders) {
+    // The books in datalake order after the saved progress, including books indexed ahead of it.
+    private List<DatalakeBook> listBooksAfterProgress(ProgressTracker progress) throws IOException {
+        List<DatalakeBook> books = new ArrayList<>();
 
-                    int bookId = Integer.parseInt(bookFolder.getFileName().toString());
+        for (DatalakeBook book : DatalakeManifest.load(Paths.get(datalakePath)).books()) {
+            if (progress.getLastDay() != null && book.day().compareTo(progress.getLastDay()) < 0) {
+                continue;
+            }
+            if (book.day().equals(progress.getLastDay()) && progress.getLastHour() != null
+                    && DatalakeManifest.HOUR_ORDER.compare(book.hour(), progress.getLastHour()) < 0) {
+                continue;
+            }
+            if (book.day().equals(progress.getLastDay()) &&
+                book.hour().equals(progress.getLastHour()) &&
+                book.bookId() <= progress.getLastIndexedId()) {
+                continue;
+            }
+            books.add(book);
+        }
 
-                    if (dayName.equals(progress.getLastDay()) &&
-                        hourName.equals(progress.getLastHour()) &&
-                        bookId <= progress.getLastIndexedId()) {
-                        continue;
-                    }
+        return books;
+    }
 
-                    Path bodyFile = bookFolder.resolve("body.txt");
-                    if (!Files.exists(bodyFile)) {
-                        continue;
-                    }
+    private void buildTsvIndex(Path outputDirectory, List<DatalakeBook> books, ProgressTracker progress)
+            throws IOException {
 
-                    indexSingleBook(outputDirectory, bodyFile, bookId);
+        BookTokenizer tokenizer = new BookTokenizer();
 
-                    progress.setLastIndexedId(Math.max(progress.getLastIndexedId(), bookId));
-                    System.out.printf("Indexed book ID %d (%s/%s)%n", bookId, dayName, hourName);
-                }
+        for (int i = 0; i < books.size(); i++) {
+            DatalakeBook book = books.get(i);
+
+            if (i == 0 || !sameHour(book, books.get(i - 1))) {
+                System.out.printf("Processing day/hour %s/%s ...%n", book.day(), book.hour());
+            }
+
+            Map<String, int[]> termPositions = tokenizeBook(tokenizer, book.bodyFile());
+            for (Map.Entry<String, int[]> entry : termPositions.entrySet()) {
+                writeTsvPosting(outputDirectory, entry.getKey(), book.bookId(), entry.getValue());
+            }
+            // term lists are only written by updates; a list an earlier update left may no longer
+            // match, and without one the next update finds the book's terms by scanning
+            Files.deleteIfExists(bookTermsFile(outputDirectory, book.bookId()));
 
-                progress.setLastDay(dayName);
-                progress.setLastHour(hourName);
+            progress.setLastIndexedId(Math.max(progress.getLastIndexedId(), book.bookId()));
+            System.out.printf("Indexed book ID %d (%s/%s)%n", book.bookId(), book.day(), book.hour());
+
+            if (i == books.size() - 1 || !sameHour(book, books.get(i + 1))) {
+                progress.setLastDay(book.day());
+                progress.setLastHour(book.hour());
                 progress.save(progressPath);
 
                 System.out.printf("Progress saved: %s/%s (last ID: %d)%n",
-                        dayName, hourName, progress.getLastIndexedId());
+                        book.day(), book.hour(), progress.getLastIndexedId());
             }
         }
+    }
 
-        System.out.printf("Indexing complete. Last indexed: %s/%s%n",
-                progress.getLastDay(), progress.getLastHour());
+    private static boolean sameHour(DatalakeBook a, DatalakeBook b) {
+        return a.day().equals(b.day()) && a.hour().equals(b.hour());
     }
 
-    private void indexSingleBook(Path outputDirectory, Path bodyFile, int bookId) throws IOException {
+    // Bodies are read and tokenized on a bounded worker pool. Each worker fills its own
+    // accumulator, but the RAM budget is shared: once all buffers together reach it, the largest
+    // one is flushed as a segment, so segments stay as large as the budget allows however many
+    // workers run. The checkpoint only moves progress once books are durable, whatever order the
+    // workers finish in.
+    private void buildSegments(List<DatalakeBook> books, ProgressTracker progress) throws IOException {
+
+        if (books.isEmpty()) return;
+
+        SegmentWriter segmentWriter = new SegmentWriter(Paths.get(segmentsDir));
+        IndexCheckpoint checkpoint = new IndexCheckpoint(books, progress, progressPath);
+        // moves the saved progress over books indexed ahead that now lead the list
+        checkpoint.markDurable(List.of());
+
+        int workers = Math.max(1, Math.min(threads, checkpoint.pendingCount()));
+
+        Queue<WorkerBuffer> buffers = new ConcurrentLinkedQueue<>();
+        ThreadLocal<WorkerBuffer> localBuffer = ThreadLocal.withInitial(() -> {
+            WorkerBuffer buffer = new WorkerBuffer(new PostingAccumulator(ramBudgetBytes));
+            buffers.add(buffer);
+            return buffer;
+        });
+        AtomicLong bufferedBytes = new AtomicLong();
+        AtomicReference<IOException> failure = new AtomicReference<>();
+
+        System.out.printf("Indexing %d books with %d worker(s)%n", checkpoint.pendingCount(), workers);
+
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(workers * 4),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+
+        try {
+            for (int seq = 0; seq < books.size() && failure.get() == null; seq++) {
+                if (checkpoint.isDurable(seq)) continue;
+                int sequence = seq;
+                DatalakeBook book = books.get(seq);
+
+                pool.execute(() -> {
+                    if (failure.get() != null) return;
+                    try {
+                        WorkerBuffer buffer = localBuffer.get();
+                        buffer.accumulator.addBook(book.bookId(), tokenizeBook(buffer.tokenizer, book.bodyFile()));
+                        buffer.sequences.add(sequence);
+                        long added = buffer.accumulator.estimatedBytes() - buffer.bytes;
+                        buffer.bytes = buffer.accumulator.estimatedBytes();
+
+                        // a buffer only ever flushes on its own worker; a larger one is asked to
+                        // flush and does so once it has added its current book
+                        if (bufferedBytes.addAndGet(added) >= ramBudgetBytes) {
+                            largestBuffer(buffers).flushRequested = true;
+                        }
+                        if (buffer.flushRequested) {
+                            flushWorkerBuffer(segmentWriter, buffer, checkpoint, bufferedBytes);
+                        }
+                    } catch (IOException exception) {
+                        failure.compareAndSet(null, exception);
+                    }
+                });
+            }
+        } finally {
+            pool.shutdown();
+            awaitTermination(pool);
+            localBuffer.remove();
+        }
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
 
-        String text = Files.readString(bodyFile).toLowerCase();
-        Matcher matcher = WORD_PATTERN.matcher(text);
+        for (WorkerBuffer buffer : buffers) {
+            if (!buffer.accumulator.isEmpty()) {
+                flushWorkerBuffer(segmentWriter, buffer, checkpoint, bufferedBytes);
+            }
+        }
 
-        Map<String, List<Integer>> termPositions = new HashMap<>();
+        System.out.printf("Indexed %d books. Progress saved: %s/%s (last ID: %d)%n",
+                checkpoint.durableCount(), progress.getLastDay(), progress.getLastHour(),
+                progress.getLastIndexedId());
+    }
 
-        int pos = 0;
-        while (matcher.find()) {
-            String word = matcher.group();
+    private void flushWorkerBuffer(SegmentWriter segmentWriter, WorkerBuffer buffer, IndexCheckpoint checkpoint,
+                                   AtomicLong bufferedBytes) throws IOException {
+
+        int books = buffer.accumulator.bookCount();
+        int terms = buffer.accumulator.termCount();
+        buffer.flushing = true;
+        try {
+            String segment = segmentWriter.flush(buffer.accumulator);
+
+            checkpoint.markDurable(buffer.sequences);
+            buffer.accumulator.clear();
+            buffer.sequences.clear();
+            bufferedBytes.addAndGet(-buffer.bytes);
+            buffer.bytes = 0;
+            buffer.flushRequested = false;
+
+            System.out.printf("Flushed segment %s (%d books, %d terms)%n", segment, books, terms);
+        } finally {
+            buffer.flushing = false;
+        }
+    }
 
-            termPositions
-                    .computeIfAbsent(word, k -> new ArrayList<>())
-                    .add(pos);
+    // The buffer holding the most postings, leaving out any being flushed right now.
+    private static WorkerBuffer largestBuffer(Queue<WorkerBuffer> buffers) {
+        WorkerBuffer largest = null;
+        for (WorkerBuffer buffer : buffers) {
+            if (buffer.flushing) continue;
+            if (largest == null || buffer.bytes > largest.bytes) largest = buffer;
+        }
+        return largest;
+    }
 
-            pos++;
+    private static void awaitTermination(ThreadPoolExecutor pool) throws IOException {
+        try {
+            while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                System.out.println("Waiting for indexing workers to finish...");
+            }
+        } catch (InterruptedException exception) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while indexing", exception);
         }
+    }
 
-        for (Map.Entry<String, List<Integer>> entry : termPositions.entrySet()) {
-            writeTsvPosting(outputDirectory, entry.getKey(), bookId, entry.getValue());
+    private static final class WorkerBuffer {
+        private final PostingAccumulator accumulator;
+        private final List<Integer> sequences = new ArrayList<>();
+        private final BookTokenizer tokenizer = new BookTokenizer();
+        // read by other workers picking the largest buffer
+        private volatile long bytes;
+        private volatile boolean flushRequested;
+        private volatile boolean flushing;
+
+        private WorkerBuffer(PostingAccumulator accumulator) {
+            this.accumulator = accumulator;
         }
     }
 
-    private void writeTsvPosting(Path outputDir, String term, int bookId, List<Integer> positions) throws IOException {
+    public void clearSegments() throws IOException {
+        if (!isSegmentMode()) return;
 
+        Path directory = Paths.get(segmentsDir);
+        if (!Files.exists(directory)) return;
+
+        try (var walk = Files.walk(directory)) {
+            for (Path path : walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private static Map<String, int[]> tokenizeBook(BookTokenizer tokenizer, Path bodyFile) throws IOException {
+        return tokenizer.tokenize(Files.readString(bodyFile));
+    }
+
+    private static Path termFile(Path outputDir, String term) {
         String safeName = URLEncoder.encode(term, StandardCharsets.UTF_8);
-        Path termFile = outputDir.resolve(safeName + ".tsv");
+        return outputDir.resolve(safeName + TSV_EXTENSION);
+    }
 
+    private static String tsvLine(int bookId, int[] positions) {
         StringBuilder sb = new StringBuilder();
         sb.append(bookId).append("\t");
 
-        for (int i = 0; i < positions.size(); i++) {
-            sb.append(positions.get(i));
-            if (i < positions.size() - 1) sb.append(",");
+        for (int i = 0; i < positions.length; i++) {
+            sb.append(positions[i]);
+            if (i < positions.length - 1) sb.append(",");
         }
         sb.append("\n");
+        return sb.toString();
+    }
+
+    // Replaces the book's line in the term file, or removes it when positions is null. A term
+    // file left without lines is deleted.
+    private void rewriteTsvPosting(Path outputDir, String term, int bookId, int[] positions) throws IOException {
+
+        Path termFile = termFile(outputDir, term);
+        String prefix = bookId + "\t";
+
+        StringBuilder sb = new StringBuilder();
+        if (Files.exists(termFile)) {
+            for (String line : Files.readAllLines(termFile, StandardCharsets.UTF_8)) {
+                if (!line.isEmpty() && !line.startsWith(prefix)) {
+                    sb.append(line).append("\n");
+                }
+            }
+        }
+        if (positions != null) sb.append(tsvLine(bookId, positions));
+
+        if (sb.length() == 0) {
+            Files.deleteIfExists(termFile);
+        } else {
+            Files.writeString(termFile, sb.toString());
+        }
+    }
+
+    // The terms an update indexed a book under are kept in BOOK_TERMS_DIR, so the next update can
+    // clear the postings of terms the book no longer contains. Full builds keep no term lists.
+    private static Path bookTermsFile(Path outputDir, int bookId) {
+        return outputDir.resolve(BOOK_TERMS_DIR).resolve(bookId + ".terms");
+    }
+
+    private static void writeBookTerms(Path outputDir, int bookId, Collection<String> terms) throws IOException {
+        Path file = bookTermsFile(outputDir, bookId);
+        Files.createDirectories(file.getParent());
+        Files.write(file, terms, StandardCharsets.UTF_8);
+    }
+
+    // Books not updated since the last full build have no term list; their terms are found by
+    // scanning every term file once.
+    private static Set<String> previousTerms(Path outputDir, int bookId) throws IOException {
+        Path file = bookTermsFile(outputDir, bookId);
+        if (Files.exists(file)) {
+            return new HashSet<>(Files.readAllLines(file, StandardCharsets.UTF_8));
+        }
+
+        Set<String> terms = new HashSet<>();
+        String prefix = bookId + "\t";
+        try (var files = Files.list(outputDir)) {
+            for (Path termFile : files.filter(path -> path.getFileName().toString().endsWith(TSV_EXTENSION)).toList()) {
+                try (var lines = Files.lines(termFile, StandardCharsets.UTF_8)) {
+                    if (lines.anyMatch(line -> line.startsWith(prefix))) {
+                        String name = termFile.getFileName().toString();
+                        terms.add(URLDecoder.decode(name.substring(0, name.length() - TSV_EXTENSION.length()),
+                                StandardCharsets.UTF_8));
+                    }
+                }
+            }
+        }
+        return terms;
+    }
+
+    private void writeTsvPosting(Path outputDir, String term, int bookId, int[] positions) throws IOException {
+
+        Path termFile = termFile(outputDir, term);
+        String line = tsvLine(bookId, positions);
 
         Files.writeString(
                 termFile,
-                sb.toString(),
+                line,
                 StandardOpenOption.CREATE,
                 StandardOpenOption.APPEND
         );
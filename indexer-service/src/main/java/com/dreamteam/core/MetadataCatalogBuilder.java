@@ -4,11 +4,9 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 import com.dreamteam.datamart.MetadataParser;
 import com.dreamteam.progress.ProgressTracker;
@@ -40,80 +38,56 @@ public class MetadataCatalogBuilder {
         Map<String, Map<String, String>> catalog = loadCatalog(output);
         boolean processedAny = false;
 
-        List<Path> dayFolders = Files.list(datalake)
-                .filter(Files::isDirectory)
-                .sorted()
-                .collect(Collectors.toList());
+        List<DatalakeBook> books = DatalakeManifest.load(datalake).books();
+        DatalakeBook previous = null;
 
-        for (Path dayFolder : dayFolders) {
-            String dayName = dayFolder.getFileName().toString();
+        for (DatalakeBook book : books) {
+            String dayName = book.day();
+            String hourName = book.hour();
 
             if (progress.getLastDay() != null && dayName.compareTo(progress.getLastDay()) < 0) {
                 continue;
             }
+            if (dayName.equals(progress.getLastDay()) && progress.getLastHour() != null
+                    && DatalakeManifest.HOUR_ORDER.compare(hourName, progress.getLastHour()) < 0) {
+                continue;
+            }
 
-            List<Path> hourFolders = Files.list(dayFolder)
-                    .filter(Files::isDirectory)
-                    .sorted(Comparator.comparingInt(p -> {
-                        String name = p.getFileName().toString();
-                        return name.matches("\\d+") ? Integer.valueOf(name) : 0;
-                    }))
-                    .collect(Collectors.toList());
-
-            for (Path hourFolder : hourFolders) {
-                String hourName = hourFolder.getFileName().toString();
-
-                if (dayName.equals(progress.getLastDay()) && progress.getLastHour() != null) {
-                    if (hourName.matches("\\d+") && progress.getLastHour().matches("\\d+")) {
-                        if (Integer.parseInt(hourName) < Integer.parseInt(progress.getLastHour())) {
-                            continue;
-                        }
-                    }
-                }
-
+            if (previous != null && !sameHour(previous, book)) {
+                saveProgress(output, catalog, progress, previous);
+            }
+            if (previous == null || !sameHour(previous, book)) {
                 System.out.printf("Processing day/hour %s/%s ...%n", dayName, hourName);
+            }
+            previous = book;
 
-                List<Path> bookFolders = Files.list(hourFolder)
-                        .filter(Files::isDirectory)
-                        .filter(p -> p.getFileName().toString().matches("\\d+"))
-                        .sorted(Comparator.comparingInt(p -> Integer.valueOf(p.getFileName().toString())))
-                        .collect(Collectors.toList());
-
-                for (Path bookFolder : bookFolders) {
-                    int bookId = Integer.parseInt(bookFolder.getFileName().toString());
-
-                    if (dayName.equals(progress.getLastDay()) &&
-                        hourName.equals(progress.getLastHour()) &&
-                        bookId <= progress.getLastIndexedId()) {
-                        continue;
-                    }
-
-                    Path headerFile = bookFolder.resolve("header.txt");
-                    if (!Files.exists(headerFile)) {
-                        continue;
-                    }
-
-                    String headerText = Files.readString(headerFile);
-                    Map<String, String> metadata = MetadataParser.parseHeaderMetadata(headerText);
-
-                    if (MetadataParser.hasAnyMetadata(metadata)) {
-                        catalog.put(String.valueOf(bookId), metadata);
-                        processedAny = true;
-                        System.out.printf("Parsed metadata for book ID %d (%s/%s): title=%s, author=%s%n",
-                                bookId, dayName, hourName,
-                                metadata.get("title"), metadata.get("author"));
-                    }
-
-                    progress.setLastIndexedId(Math.max(progress.getLastIndexedId(), bookId));
-                }
-
-                saveCatalog(output, catalog);
-                progress.setLastDay(dayName);
-                progress.setLastHour(hourName);
-                progress.save(progressPath);
-                System.out.printf("Progress saved: %s/%s (last ID: %d)%n",
-                        dayName, hourName, progress.getLastIndexedId());
+            if (dayName.equals(progress.getLastDay()) &&
+                hourName.equals(progress.getLastHour()) &&
+                book.bookId() <= progress.getLastIndexedId()) {
+                continue;
             }
+
+            Path headerFile = book.headerFile();
+            if (!Files.exists(headerFile)) {
+                continue;
+            }
+
+            String headerText = Files.readString(headerFile);
+            Map<String, String> metadata = MetadataParser.parseHeaderMetadata(headerText);
+
+            if (MetadataParser.hasAnyMetadata(metadata)) {
+                catalog.put(String.valueOf(book.bookId()), metadata);
+                processedAny = true;
+                System.out.printf("Parsed metadata for book ID %d (%s/%s): title=%s, author=%s%n",
+                        book.bookId(), dayName, hourName,
+                        metadata.get("title"), metadata.get("author"));
+            }
+
+            progress.setLastIndexedId(Math.max(progress.getLastIndexedId(), book.bookId()));
+        }
+
+        if (previous != null) {
+            saveProgress(output, catalog, progress, previous);
         }
 
         if (processedAny) {
@@ -124,18 +98,32 @@ public class MetadataCatalogBuilder {
         }
     }
 
+    private void saveProgress(Path output, Map<String, Map<String, String>> catalog,
+                              ProgressTracker progress, DatalakeBook lastBook) throws IOException {
+        saveCatalog(output, catalog);
+        progress.setLastDay(lastBook.day());
+        progress.setLastHour(lastBook.hour());
+        progress.save(progressPath);
+        System.out.printf("Progress saved: %s/%s (last ID: %d)%n",
+                lastBook.day(), lastBook.hour(), progress.getLastIndexedId());
+    }
+
+    private static boolean sameHour(DatalakeBook a, DatalakeBook b) {
+        return a.day().equals(b.day()) && a.hour().equals(b.hour());
+    }
+
     public void updateBookCatalog(int bookId) throws IOException {
         Path datalake = Paths.get(datalakePath);
         Path output = Paths.get(outputPath);
 
         Map<String, Map<String, String>> catalog = loadCatalog(output);
 
-        Path bookPath = findBookPath(datalake, bookId);
-        if (bookPath == null) {
+        DatalakeBook book = DatalakeManifest.load(datalake).find(bookId);
+        if (book == null) {
             throw new IOException("Book ID " + bookId + " not found in datalake");
         }
 
-        Path headerFile = bookPath.resolve("header.txt");
+        Path headerFile = book.headerFile();
         if (!Files.exists(headerFile)) {
             throw new IOException("header.txt not found for book ID " + bookId);
         }
@@ -155,29 +143,6 @@ public class MetadataCatalogBuilder {
         saveCatalog(output, catalog);
     }
 
-    private Path findBookPath(Path datalake, int bookId) throws IOException {
-        String bookIdStr = String.valueOf(bookId);
-        
-        List<Path> dayFolders = Files.list(datalake)
-                .filter(Files::isDirectory)
-                .collect(Collectors.toList());
-
-        for (Path dayFolder : dayFolders) {
-            List<Path> hourFolders = Files.list(dayFolder)
-                    .filter(Files::isDirectory)
-                    .collect(Collectors.toList());
-
-            for (Path hourFolder : hourFolders) {
-                Path bookFolder = hourFolder.resolve(bookIdStr);
-                if (Files.exists(bookFolder) && Files.isDirectory(bookFolder)) {
-                    return bookFolder;
-                }
-            }
-        }
-
-        return null;
-    }
-
     private Map<String, Map<String, String>> loadCatalog(Path output) throws IOException {
         if (Files.exists(output)) {
             String json = Files.readString(output);
@@ -0,0 +1,94 @@
+package com.dreamteam.core;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PostingAccumulator {
+
+    // Rough JVM footprints used to keep the buffer under its RAM budget.
+    private static final int TERM_OVERHEAD_BYTES = 96;
+    private static final int POSTING_OVERHEAD_BYTES = 48;
+
+    public record Posting(int bookId, int[] positions) {}
+
+    private final long ramBudgetBytes;
+    private final Map<String, List<Posting>> postings = new HashMap<>();
+    private final List<Integer> bookIds = new ArrayList<>();
+    private final Map<Integer, Integer> docLengths = new HashMap<>();
+    private long estimatedBytes;
+
+    public PostingAccumulator(long ramBudgetBytes) {
+        this.ramBudgetBytes = ramBudgetBytes;
+    }
+
+    public void addBook(int bookId, Map<String, int[]> termPositions) {
+        int length = 0;
+        for (Map.Entry<String, int[]> entry : termPositions.entrySet()) {
+            List<Posting> termPostings = postings.get(entry.getKey());
+            if (termPostings == null) {
+                termPostings = new ArrayList<>();
+                postings.put(entry.getKey(), termPostings);
+                estimatedBytes += TERM_OVERHEAD_BYTES + 2L * entry.getKey().length();
+            }
+
+            int[] packed = entry.getValue();
+            termPostings.add(new Posting(bookId, packed));
+            estimatedBytes += POSTING_OVERHEAD_BYTES + 4L * packed.length;
+            length += packed.length;
+        }
+        bookIds.add(bookId);
+        docLengths.put(bookId, length);
+    }
+
+    public boolean isFull() {
+        return estimatedBytes >= ramBudgetBytes;
+    }
+
+    public boolean isEmpty() {
+        return bookIds.isEmpty();
+    }
+
+    public int bookCount() {
+        return bookIds.size();
+    }
+
+    public List<Integer> bookIds() {
+        return bookIds;
+    }
+
+    // Number of indexed tokens in the book, the document length used by BM25.
+    public int docLength(int bookId) {
+        return docLengths.getOrDefault(bookId, 0);
+    }
+
+    public int termCount() {
+        return postings.size();
+    }
+
+    public long estimatedBytes() {
+        return estimatedBytes;
+    }
+
+    public List<String> sortedTerms() {
+        List<String> terms = new ArrayList<>(postings.keySet());
+        terms.sort(Comparator.naturalOrder());
+        return terms;
+    }
+
+    public List<Posting> postingsFor(String term) {
+        List<Posting> termPostings = postings.get(term);
+        if (termPostings == null) return List.of();
+        termPostings.sort(Comparator.comparingInt(Posting::bookId));
+        return termPostings;
+    }
+
+    public void clear() {
+        postings.clear();
+        bookIds.clear();
+        docLengths.clear();
+        estimatedBytes = 0;
+    }
+}
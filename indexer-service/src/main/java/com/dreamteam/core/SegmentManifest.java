@@ -0,0 +1,267 @@
+package com.dreamteam.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+public class SegmentManifest {
+    public static final String FILE_NAME = "segments.json";
+
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    private static final Object LOCK = new Object();
+
+    public interface Change {
+        void apply(SegmentManifest manifest) throws IOException;
+    }
+
+    public static class SegmentInfo {
+        private final String name;
+        private final int docCount;
+        private final int minDoc;
+        private final int maxDoc;
+        private final long sizeBytes;
+        private List<Integer> deleted;
+        // The segment's books as base64 delta varints, so publishing never has to open it.
+        // Null only in entries written before this was recorded.
+        private String docIds;
+        private transient int[] decodedDocIds;
+
+        public SegmentInfo(String name, int[] sortedDocIds, long sizeBytes) {
+            this.name = name;
+            this.sizeBytes = sizeBytes;
+            this.docCount = sortedDocIds.length;
+            this.minDoc = sortedDocIds.length > 0 ? sortedDocIds[0] : 0;
+            this.maxDoc = sortedDocIds.length > 0 ? sortedDocIds[sortedDocIds.length - 1] : -1;
+            this.deleted = new ArrayList<>();
+            setDocIds(sortedDocIds);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getDocCount() {
+            return docCount;
+        }
+
+        public long getSizeBytes() {
+            return sizeBytes;
+        }
+
+        public int getLiveDocCount() {
+            return docCount - getDeleted().size();
+        }
+
+        public List<Integer> getDeleted() {
+            if (deleted == null) deleted = new ArrayList<>();
+            return deleted;
+        }
+
+        public boolean mayContain(int bookId) {
+            return bookId >= minDoc && bookId <= maxDoc;
+        }
+
+        public boolean hasDocIds() {
+            return docIds != null;
+        }
+
+        public boolean contains(int bookId) {
+            if (!mayContain(bookId)) return false;
+            if (decodedDocIds == null) decodedDocIds = decodeDocIds(docIds, docCount);
+            return Arrays.binarySearch(decodedDocIds, bookId) >= 0;
+        }
+
+        public boolean isDeleted(int bookId) {
+            return Collections.binarySearch(getDeleted(), bookId) >= 0;
+        }
+
+        public double deletedRatio() {
+            return docCount == 0 ? 1.0 : getDeleted().size() / (double) docCount;
+        }
+
+        private void delete(int bookId) {
+            List<Integer> list = getDeleted();
+            int index = Collections.binarySearch(list, bookId);
+            if (index < 0) list.add(-index - 1, bookId);
+        }
+
+        private void setDocIds(int[] sortedDocIds) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(sortedDocIds.length + 16);
+            int previous = 0;
+            for (int bookId : sortedDocIds) {
+                VarInt.write(out, bookId - previous);
+                previous = bookId;
+            }
+            this.docIds = Base64.getEncoder().encodeToString(out.toByteArray());
+            this.decodedDocIds = sortedDocIds;
+        }
+
+        private static int[] decodeDocIds(String encoded, int count) {
+            ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(encoded));
+            int[] ids = new int[count];
+            int previous = 0;
+            for (int i = 0; i < count; i++) {
+                previous += VarInt.read(buffer);
+                ids[i] = previous;
+            }
+            return ids;
+        }
+    }
+
+    private long generation;
+    private int nextSegmentId;
+    private List<SegmentInfo> segments;
+
+    public SegmentManifest() {
+        this.generation = 0;
+        this.nextSegmentId = 1;
+        this.segments = new ArrayList<>();
+    }
+
+    public static SegmentManifest load(Path segmentsDir) throws IOException {
+        Path path = segmentsDir.resolve(FILE_NAME);
+        if (!Files.exists(path)) {
+            return new SegmentManifest();
+        }
+        SegmentManifest manifest = gson.fromJson(Files.readString(path), SegmentManifest.class);
+        if (manifest == null) {
+            return new SegmentManifest();
+        }
+        if (manifest.segments == null) {
+            manifest.segments = new ArrayList<>();
+        }
+        return manifest;
+    }
+
+    public static SegmentManifest update(Path segmentsDir, Change change) throws IOException {
+        synchronized (LOCK) {
+            SegmentManifest manifest = load(segmentsDir);
+            change.apply(manifest);
+            manifest.generation++;
+            manifest.save(segmentsDir);
+            return manifest;
+        }
+    }
+
+    public static String reserveSegmentName(Path segmentsDir) throws IOException {
+        synchronized (LOCK) {
+            SegmentManifest manifest = load(segmentsDir);
+            String name = String.format("seg-%06d", manifest.nextSegmentId++);
+            manifest.save(segmentsDir);
+            return name;
+        }
+    }
+
+    // Makes a written segment live. Its books replace any postings they still have in older
+    // segments, which are marked deleted there and dropped by readers and merges. Deletions are
+    // resolved from the doc ids kept in the manifest; segments listed before those were recorded
+    // are read once, outside the lock, and their ids stored.
+    public static SegmentManifest publish(Path segmentsDir, SegmentInfo segment, int[] sortedDocIds)
+            throws IOException {
+
+        Map<String, int[]> legacyDocIds = readLegacyDocIds(segmentsDir);
+
+        return update(segmentsDir, manifest -> {
+            for (SegmentInfo existing : manifest.segments) {
+                if (!existing.hasDocIds()) {
+                    int[] docIds = legacyDocIds.get(existing.getName());
+                    if (docIds == null) {
+                        throw new IOException("Segment " + existing.getName() + " has no recorded doc ids");
+                    }
+                    existing.setDocIds(docIds);
+                }
+                manifest.deleteBooks(existing, sortedDocIds);
+            }
+            manifest.segments.add(segment);
+        });
+    }
+
+    private static Map<String, int[]> readLegacyDocIds(Path segmentsDir) throws IOException {
+        Map<String, int[]> docIds = new HashMap<>();
+        for (SegmentInfo segment : load(segmentsDir).segments) {
+            if (segment.hasDocIds()) continue;
+            Path file = segmentsDir.resolve(segment.getName() + SegmentWriter.EXTENSION);
+            docIds.put(segment.getName(), SegmentReader.open(file).docIds());
+        }
+        return docIds;
+    }
+
+    // Atomically swaps merge sources for their merged segment (or for nothing when no live
+    // book remained). Books deleted from a source while the merge ran are deleted from the
+    // merged segment too. Returns false, changing nothing, if a source is no longer live.
+    public static boolean replaceSegments(Path segmentsDir, List<SegmentInfo> sources, SegmentInfo merged,
+                                          int[] mergedDocIds) throws IOException {
+        boolean[] replaced = new boolean[1];
+
+        update(segmentsDir, manifest -> {
+            int insertAt = -1;
+            for (SegmentInfo source : sources) {
+                int index = manifest.indexOf(source.getName());
+                if (index < 0) return;
+                insertAt = insertAt < 0 ? index : Math.min(insertAt, index);
+            }
+
+            for (SegmentInfo source : sources) {
+                SegmentInfo current = manifest.segments.get(manifest.indexOf(source.getName()));
+                for (int bookId : current.getDeleted()) {
+                    if (merged != null && !source.isDeleted(bookId)
+                            && Arrays.binarySearch(mergedDocIds, bookId) >= 0) {
+                        merged.delete(bookId);
+                    }
+                }
+                manifest.segments.remove(current);
+            }
+
+            if (merged != null) {
+                manifest.segments.add(Math.min(insertAt, manifest.segments.size()), merged);
+            }
+            replaced[0] = true;
+        });
+
+        return replaced[0];
+    }
+
+    private int indexOf(String segmentName) {
+        for (int i = 0; i < segments.size(); i++) {
+            if (segments.get(i).getName().equals(segmentName)) return i;
+        }
+        return -1;
+    }
+
+    private void deleteBooks(SegmentInfo segment, int[] sortedDocIds) {
+        for (int bookId : sortedDocIds) {
+            if (segment.contains(bookId)) {
+                segment.delete(bookId);
+            }
+        }
+    }
+
+    private void save(Path segmentsDir) throws IOException {
+        Files.createDirectories(segmentsDir);
+        Path target = segmentsDir.resolve(FILE_NAME);
+        Path tmp = segmentsDir.resolve(FILE_NAME + ".tmp");
+        Files.writeString(tmp, gson.toJson(this));
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public List<SegmentInfo> getSegments() {
+        return segments;
+    }
+}
@@ -0,0 +1,127 @@
+package com.dreamteam.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SegmentReader {
+
+    private final Path path;
+    private final ByteBuffer buffer;
+    private final int[] docIds;
+    private final int[] docLengths;
+    private final TermDictionary dictionary;
+    private final TermDictionary.Cursor terms;
+
+    private String term;
+
+    private SegmentReader(Path path, ByteBuffer buffer) throws IOException {
+        this.path = path;
+        this.buffer = buffer;
+
+        if (buffer.getInt() != SegmentWriter.MAGIC) {
+            throw new IOException("Not a segment file: " + path);
+        }
+        byte version = buffer.get();
+        if (version != SegmentWriter.VERSION) {
+            throw new IOException("Unsupported segment version " + version + " in " + path);
+        }
+
+        this.docIds = new int[VarInt.read(buffer)];
+        this.docLengths = new int[docIds.length];
+        int docId = 0;
+        for (int i = 0; i < docIds.length; i++) {
+            docId += VarInt.read(buffer);
+            docIds[i] = docId;
+            docLengths[i] = VarInt.read(buffer);
+        }
+
+        ByteBuffer footer = buffer.duplicate();
+        footer.position(buffer.limit() - SegmentWriter.FOOTER_SIZE);
+        int dictStart = footer.getInt();
+        int indexStart = footer.getInt();
+        int termCount = footer.getInt();
+        if (footer.getInt() != SegmentWriter.MAGIC) {
+            throw new IOException("Truncated segment file: " + path);
+        }
+        this.dictionary = TermDictionary.read(buffer, dictStart, indexStart, termCount);
+        this.terms = dictionary.cursor();
+    }
+
+    public static SegmentReader open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new SegmentReader(path, buffer);
+        }
+    }
+
+    public boolean containsDoc(int bookId) {
+        return Arrays.binarySearch(docIds, bookId) >= 0;
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public int[] docIds() {
+        return docIds;
+    }
+
+    // Parallel to docIds(): the token count of each book.
+    public int[] docLengths() {
+        return docLengths;
+    }
+
+    public TermDictionary dictionary() {
+        return dictionary;
+    }
+
+    // Advances to the next term in dictionary order; postings are only decoded on request.
+    public boolean nextTerm() {
+        term = terms.next() ? terms.term() : null;
+        return term != null;
+    }
+
+    // Positions the reader on term through the dictionary; returns false if it is absent.
+    public boolean seek(String term) {
+        if (!dictionary.seekCeil(term, terms) || !terms.term().equals(term)) {
+            this.term = null;
+            return false;
+        }
+        this.term = term;
+        return true;
+    }
+
+    public String term() {
+        return term;
+    }
+
+    public int docFreq() {
+        return terms.docFreq();
+    }
+
+    public List<PostingAccumulator.Posting> postings() {
+        int docFreq = terms.docFreq();
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(terms.postingsOffset());
+
+        List<PostingAccumulator.Posting> postings = new ArrayList<>(docFreq);
+        int docId = 0;
+        for (int i = 0; i < docFreq; i++) {
+            docId += VarInt.read(payload);
+            int[] positions = new int[VarInt.read(payload)];
+            int position = 0;
+            for (int p = 0; p < positions.length; p++) {
+                position += VarInt.read(payload);
+                positions[p] = position;
+            }
+            postings.add(new PostingAccumulator.Posting(docId, positions));
+        }
+        return postings;
+    }
+}
@@ -0,0 +1,166 @@
+package com.dreamteam.core;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.TreeSet;
+
+/*
+ * Binary segment layout (all counts and ids are varints unless typed):
+ *
+ *   magic:int  version:byte
+ *   docCount  per doc: docId delta, docLength
+ *   postings: per term, in ascending term order: payload
+ *   term dictionary (see TermDictionary)
+ *   footer:   dictStart:int  indexStart:int  termCount:int  magic:int
+ *   payload:  per posting: docId delta, freq, position deltas...
+ *
+ * Doc ids are delta-encoded against the previous posting of the same term,
+ * positions against the previous position in the same document. freq is the term
+ * frequency and docLength the book's token count, both recorded for BM25. The
+ * dictionary maps each term to its document frequency and the offset of its payload.
+ */
+public class SegmentWriter {
+    public static final String EXTENSION = ".seg";
+    public static final int MAGIC = 0x44545347;
+    public static final byte VERSION = 4;
+    public static final int FOOTER_SIZE = 16;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final Path segmentsDir;
+
+    public SegmentWriter(Path segmentsDir) {
+        this.segmentsDir = segmentsDir;
+    }
+
+    // One sequential write per segment, published through the manifest once complete.
+    public String flush(PostingAccumulator accumulator) throws IOException {
+        int[] docIds = new TreeSet<>(accumulator.bookIds()).stream().mapToInt(Integer::intValue).toArray();
+        int[] docLengths = new int[docIds.length];
+        for (int i = 0; i < docIds.length; i++) {
+            docLengths[i] = accumulator.docLength(docIds[i]);
+        }
+
+        try (Output output = open(docIds, docLengths)) {
+            for (String term : accumulator.sortedTerms()) {
+                output.addTerm(term, accumulator.postingsFor(term));
+            }
+            SegmentManifest.SegmentInfo segment = output.finish();
+            SegmentManifest.publish(segmentsDir, segment, docIds);
+            return segment.getName();
+        }
+    }
+
+    // docLengths[i] is the token count of sortedDocIds[i].
+    public Output open(int[] sortedDocIds, int[] docLengths) throws IOException {
+        Files.createDirectories(segmentsDir);
+        return new Output(SegmentManifest.reserveSegmentName(segmentsDir), sortedDocIds, docLengths);
+    }
+
+    // A segment being written. It only appears under its final name once finish() succeeds;
+    // closing it unfinished discards the temporary file.
+    public final class Output implements Closeable {
+        private final String name;
+        private final int[] docIds;
+        private final Path tmp;
+        private final DataOutputStream out;
+        private final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        private final TermDictionary.Writer dictionary = new TermDictionary.Writer();
+        // Bytes written so far. The format stores offsets as ints, so a segment must stay
+        // addressable below 2 GiB; DataOutputStream.size() would silently saturate instead.
+        private long position;
+        private boolean finished;
+
+        private Output(String name, int[] docIds, int[] docLengths) throws IOException {
+            this.name = name;
+            this.docIds = docIds;
+            this.tmp = segmentsDir.resolve(name + EXTENSION + ".tmp");
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), BUFFER_SIZE));
+
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+
+            VarInt.write(header, docIds.length);
+            int previousDoc = 0;
+            for (int i = 0; i < docIds.length; i++) {
+                VarInt.write(header, docIds[i] - previousDoc);
+                VarInt.write(header, docLengths[i]);
+                previousDoc = docIds[i];
+            }
+            position = Integer.BYTES + 1 + header.size();
+            checkFits(position);
+            header.writeTo(out);
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public long bytesWritten() {
+            return position;
+        }
+
+        public void addTerm(String term, List<PostingAccumulator.Posting> postings) throws IOException {
+            payload.reset();
+            int previousDoc = 0;
+            for (PostingAccumulator.Posting posting : postings) {
+                VarInt.write(payload, posting.bookId() - previousDoc);
+                previousDoc = posting.bookId();
+
+                int[] positions = posting.positions();
+                VarInt.write(payload, positions.length);
+                int previousPosition = 0;
+                for (int position : positions) {
+                    VarInt.write(payload, position - previousPosition);
+                    previousPosition = position;
+                }
+            }
+
+            checkFits(position + payload.size());
+            dictionary.add(term.getBytes(StandardCharsets.UTF_8), postings.size(), (int) position, payload.size());
+            payload.writeTo(out);
+            position += payload.size();
+        }
+
+        public SegmentManifest.SegmentInfo finish() throws IOException {
+            checkFits(position + dictionary.sizeInBytes() + FOOTER_SIZE);
+            int dictStart = (int) position;
+            int indexStart = dictStart + dictionary.writeTo(out);
+            position += dictionary.sizeInBytes() + FOOTER_SIZE;
+            out.writeInt(dictStart);
+            out.writeInt(indexStart);
+            out.writeInt(dictionary.termCount());
+            out.writeInt(MAGIC);
+            out.close();
+
+            Path target = segmentsDir.resolve(name + EXTENSION);
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            finished = true;
+            return new SegmentManifest.SegmentInfo(name, docIds, Files.size(target));
+        }
+
+        // Fails the segment before it grows past what its int offsets can address.
+        private void checkFits(long size) throws IOException {
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Segment " + name + " would exceed " + Integer.MAX_VALUE
+                        + " bytes; lower index.ram.budget.mb or index.merge.max.segment.mb");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (finished) return;
+            out.close();
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
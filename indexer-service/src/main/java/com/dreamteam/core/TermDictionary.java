@@ -0,0 +1,233 @@
+package com.dreamteam.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+ * Sorted term dictionary stored behind the postings of a segment (all numbers are varints):
+ *
+ *   blocks: per term: sharedPrefixLength suffixLength suffixBytes docFreq postingsLength
+ *   index:  blockCount, per block: firstTermLength firstTermBytes blockOffset postingsOffset
+ *
+ * Terms are grouped in blocks of BLOCK_SIZE and share their prefix with the previous term of
+ * the same block. Only the block index is decoded up front: a lookup binary-searches the first
+ * terms of the blocks and then scans a single block. Terms compare as unsigned UTF-8 bytes,
+ * which for the index alphabet is the same order as String.compareTo.
+ */
+public final class TermDictionary {
+    public static final int BLOCK_SIZE = 32;
+
+    private final ByteBuffer blocks;
+    private final int termCount;
+    private final byte[][] firstTerms;
+    private final int[] blockOffsets;
+    private final int[] blockPostings;
+
+    private TermDictionary(ByteBuffer blocks, int termCount, byte[][] firstTerms,
+                           int[] blockOffsets, int[] blockPostings) {
+        this.blocks = blocks;
+        this.termCount = termCount;
+        this.firstTerms = firstTerms;
+        this.blockOffsets = blockOffsets;
+        this.blockPostings = blockPostings;
+    }
+
+    // file holds the whole segment; dictStart and indexStart are absolute positions in it.
+    public static TermDictionary read(ByteBuffer file, int dictStart, int indexStart, int termCount) {
+        ByteBuffer blocks = file.duplicate();
+        blocks.position(dictStart).limit(indexStart);
+        blocks = blocks.slice();
+
+        ByteBuffer index = file.duplicate();
+        index.position(indexStart);
+
+        int blockCount = VarInt.read(index);
+        byte[][] firstTerms = new byte[blockCount][];
+        int[] blockOffsets = new int[blockCount];
+        int[] blockPostings = new int[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            firstTerms[i] = new byte[VarInt.read(index)];
+            index.get(firstTerms[i]);
+            blockOffsets[i] = VarInt.read(index);
+            blockPostings[i] = VarInt.read(index);
+        }
+        return new TermDictionary(blocks, termCount, firstTerms, blockOffsets, blockPostings);
+    }
+
+    public int termCount() {
+        return termCount;
+    }
+
+    public Cursor cursor() {
+        Cursor cursor = new Cursor();
+        cursor.reset(0);
+        return cursor;
+    }
+
+    // Positions the cursor on the first term >= term; returns false if there is none.
+    public boolean seekCeil(String term, Cursor cursor) {
+        byte[] target = term.getBytes(StandardCharsets.UTF_8);
+        cursor.reset(Math.max(findBlock(target), 0));
+        while (cursor.next()) {
+            if (cursor.compareTo(target) >= 0) return true;
+        }
+        return false;
+    }
+
+    // Returns a cursor positioned on term, or null if the dictionary does not contain it.
+    public Cursor lookup(String term) {
+        byte[] target = term.getBytes(StandardCharsets.UTF_8);
+        int block = findBlock(target);
+        if (block < 0) return null;
+
+        Cursor cursor = new Cursor();
+        cursor.reset(block);
+        int end = Math.min(termCount, (block + 1) * BLOCK_SIZE);
+        while (cursor.ordinal + 1 < end && cursor.next()) {
+            int cmp = cursor.compareTo(target);
+            if (cmp == 0) return cursor;
+            if (cmp > 0) return null;
+        }
+        return null;
+    }
+
+    // Index of the last block whose first term is <= target, or -1 if target sorts first.
+    private int findBlock(byte[] target) {
+        int low = 0;
+        int high = firstTerms.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (Arrays.compareUnsigned(firstTerms[mid], target) <= 0) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    public final class Cursor {
+        private final ByteBuffer buffer = blocks.duplicate();
+        private byte[] term = new byte[32];
+        private int termLength;
+        private int ordinal = -1;
+        private int docFreq;
+        private int postingsOffset;
+        private int postingsLength;
+
+        private Cursor() {}
+
+        private void reset(int block) {
+            if (block >= blockOffsets.length) {
+                ordinal = termCount - 1;
+                return;
+            }
+            buffer.position(blockOffsets[block]);
+            ordinal = block * BLOCK_SIZE - 1;
+            postingsOffset = blockPostings[block];
+            postingsLength = 0;
+            termLength = 0;
+        }
+
+        public boolean next() {
+            if (ordinal + 1 >= termCount) {
+                ordinal = termCount;
+                return false;
+            }
+            ordinal++;
+
+            int shared = VarInt.read(buffer);
+            int suffix = VarInt.read(buffer);
+            if (shared + suffix > term.length) {
+                term = Arrays.copyOf(term, Math.max(shared + suffix, term.length * 2));
+            }
+            buffer.get(term, shared, suffix);
+            termLength = shared + suffix;
+
+            postingsOffset += postingsLength;
+            docFreq = VarInt.read(buffer);
+            postingsLength = VarInt.read(buffer);
+            return true;
+        }
+
+        public String term() {
+            return new String(term, 0, termLength, StandardCharsets.UTF_8);
+        }
+
+        public int compareTo(byte[] other) {
+            return Arrays.compareUnsigned(term, 0, termLength, other, 0, other.length);
+        }
+
+        public int docFreq() {
+            return docFreq;
+        }
+
+        public int postingsOffset() {
+            return postingsOffset;
+        }
+
+        public int postingsLength() {
+            return postingsLength;
+        }
+    }
+
+    public static final class Writer {
+        private final ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        private byte[] previous = new byte[0];
+        private int termCount;
+        private int blockCount;
+
+        public void add(byte[] term, int docFreq, int postingsOffset, int postingsLength) {
+            int shared = 0;
+            if (termCount % BLOCK_SIZE == 0) {
+                VarInt.write(index, term.length);
+                index.writeBytes(term);
+                VarInt.write(index, blocks.size());
+                VarInt.write(index, postingsOffset);
+                blockCount++;
+            } else {
+                int max = Math.min(previous.length, term.length);
+                while (shared < max && previous[shared] == term[shared]) shared++;
+            }
+
+            VarInt.write(blocks, shared);
+            VarInt.write(blocks, term.length - shared);
+            blocks.write(term, shared, term.length - shared);
+            VarInt.write(blocks, docFreq);
+            VarInt.write(blocks, postingsLength);
+
+            previous = term;
+            termCount++;
+        }
+
+        public int termCount() {
+            return termCount;
+        }
+
+        // Writes the blocks followed by the block index; returns the size of the block section.
+        public int writeTo(OutputStream out) throws IOException {
+            blocks.writeTo(out);
+            blockCount().writeTo(out);
+            index.writeTo(out);
+            return blocks.size();
+        }
+
+        // Total bytes writeTo produces.
+        public long sizeInBytes() {
+            return (long) blocks.size() + blockCount().size() + index.size();
+        }
+
+        private ByteArrayOutputStream blockCount() {
+            ByteArrayOutputStream count = new ByteArrayOutputStream();
+            VarInt.write(count, blockCount);
+            return count;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.dreamteam.core;
+
+import java.util.Arrays;
+
+// Interns char-buffer slices into dense term ids so tokens never become Strings; each
+// distinct term is materialized once, the first time its String is asked for.
+public final class TermTable {
+
+    private char[] pool = new char[1 << 16];
+    private int poolSize;
+
+    private int[] offsets = new int[1024];
+    private int[] lengths = new int[1024];
+    private int[] hashes = new int[1024];
+    private String[] terms = new String[1024];
+    private int size;
+
+    private int[] slots = new int[2048];
+
+    public int intern(char[] buffer, int length) {
+        int hash = hash(buffer, length);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+
+        while (true) {
+            int entry = slots[slot];
+            if (entry == 0) break;
+
+            int id = entry - 1;
+            if (hashes[id] == hash && equals(id, buffer, length)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int id = add(buffer, length, hash);
+        slots[slot] = id + 1;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    public String term(int id) {
+        String term = terms[id];
+        if (term == null) {
+            term = new String(pool, offsets[id], lengths[id]);
+            terms[id] = term;
+        }
+        return term;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int add(char[] buffer, int length, int hash) {
+        if (size == offsets.length) {
+            int capacity = size * 2;
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            terms = Arrays.copyOf(terms, capacity);
+        }
+        if (poolSize + length > pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + length));
+        }
+
+        System.arraycopy(buffer, 0, pool, poolSize, length);
+        offsets[size] = poolSize;
+        lengths[size] = length;
+        hashes[size] = hash;
+        poolSize += length;
+        return size++;
+    }
+
+    private boolean equals(int id, char[] buffer, int length) {
+        if (lengths[id] != length) return false;
+        int offset = offsets[id];
+        for (int i = 0; i < length; i++) {
+            if (pool[offset + i] != buffer[i]) return false;
+        }
+        return true;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    private static int hash(char[] buffer, int length) {
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + buffer[i];
+        }
+        return h ^ (h >>> 16);
+    }
+}
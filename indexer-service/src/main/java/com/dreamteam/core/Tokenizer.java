@@ -0,0 +1,79 @@
+package com.dreamteam.core;
+
+import java.util.Arrays;
+
+// Character-scanning replacement for matching \b[a-záéíóúüñ]+\b over text.toLowerCase().
+//
+// A token is a maximal run of word characters as Java's \b sees them: letters, digits, '_',
+// and non-spacing marks whose base character is a letter or digit. The run is lowercased as it is scanned into
+// a reusable buffer and emitted only if every character belongs to the index alphabet, which
+// is exactly when the regex would have matched it. Characters whose lowercase form expands to
+// several chars (e.g. U+0130) are lowercased one-to-one instead.
+public final class Tokenizer {
+
+    public interface TokenSink {
+        void accept(char[] buffer, int length, int position);
+    }
+
+    private char[] buffer = new char[64];
+
+    public int tokenize(CharSequence text, TokenSink sink) {
+        int position = 0;
+        int length = 0;
+        boolean inRun = false;
+        boolean valid = true;
+        boolean markHasBase = false;
+
+        int i = 0;
+        int end = text.length();
+        while (i < end) {
+            int codePoint = Character.codePointAt(text, i);
+            i += Character.charCount(codePoint);
+
+            boolean word;
+            if (Character.getType(codePoint) == Character.NON_SPACING_MARK) {
+                word = markHasBase;
+            } else {
+                markHasBase = Character.isLetterOrDigit(codePoint);
+                word = markHasBase || codePoint == '_';
+            }
+
+            if (word) {
+                inRun = true;
+                if (!valid) continue;
+
+                char lower = codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT
+                        ? Character.toLowerCase((char) codePoint)
+                        : 0;
+                if (!inAlphabet(lower)) {
+                    valid = false;
+                    continue;
+                }
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, length * 2);
+                }
+                buffer[length++] = lower;
+            } else if (inRun) {
+                if (valid) sink.accept(buffer, length, position++);
+                inRun = false;
+                valid = true;
+                length = 0;
+            }
+        }
+
+        if (inRun && valid) {
+            sink.accept(buffer, length, position++);
+        }
+        return position;
+    }
+
+    private static boolean inAlphabet(char c) {
+        if (c >= 'a' && c <= 'z') return true;
+        switch (c) {
+            case 'á': case 'é': case 'í': case 'ó': case 'ú': case 'ü': case 'ñ':
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.dreamteam.core;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+public final class VarInt {
+
+    private VarInt() {}
+
+    // Little-endian base-128: seven payload bits per byte, high bit set while more bytes follow.
+    public static void write(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    public static int read(ByteBuffer buffer) {
+        int b = buffer.get();
+        if (b >= 0) return b;
+
+        int value = b & 0x7F;
+        int shift = 7;
+        while (true) {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+            shift += 7;
+        }
+    }
+}
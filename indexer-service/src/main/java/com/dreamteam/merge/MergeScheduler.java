@@ -0,0 +1,196 @@
+package com.dreamteam.merge;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.dreamteam.core.SegmentManifest;
+import com.dreamteam.core.SegmentManifest.SegmentInfo;
+import com.dreamteam.core.SegmentWriter;
+
+// Runs merges on a single low-priority background thread, periodically and after each
+// flush. A merge only becomes visible through an atomic manifest swap, so readers see
+// either the source segments or the merged one, never a mix.
+public class MergeScheduler {
+
+    private final Path segmentsDir;
+    private final TieredMergePolicy policy;
+    private final SegmentMerger merger;
+    private final long intervalSeconds;
+
+    private final ScheduledExecutorService executor;
+    private final ReentrantLock mergeLock = new ReentrantLock();
+    private final AtomicInteger activeIndexing = new AtomicInteger();
+
+    private final AtomicLong mergesCompleted = new AtomicLong();
+    private final AtomicLong segmentsMerged = new AtomicLong();
+    private final AtomicLong segmentsDropped = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    private volatile boolean paused;
+    private volatile boolean abortRequested;
+    private volatile String state = "idle";
+    private volatile Map<String, Object> lastMerge;
+    private volatile String lastError;
+
+    public MergeScheduler(Path segmentsDir, TieredMergePolicy policy, long maxBytesPerSecond, long intervalSeconds) {
+        this.segmentsDir = segmentsDir;
+        this.policy = policy;
+        this.intervalSeconds = intervalSeconds;
+        this.merger = new SegmentMerger(segmentsDir,
+                new MergeThrottle(maxBytesPerSecond, () -> activeIndexing.get() > 0),
+                () -> abortRequested);
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "segment-merger");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    public void start() {
+        if (intervalSeconds > 0) {
+            executor.scheduleWithFixedDelay(this::runMerges, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    public void trigger() {
+        if (!executor.isShutdown()) {
+            executor.execute(this::runMerges);
+        }
+    }
+
+    public void indexingStarted() {
+        activeIndexing.incrementAndGet();
+    }
+
+    public void indexingFinished() {
+        activeIndexing.decrementAndGet();
+    }
+
+    // Aborts a running merge and waits for it to let go of the segments, e.g. before a rebuild
+    // deletes them. Merges stay off until resume().
+    public void pause() {
+        paused = true;
+        abortRequested = true;
+        mergeLock.lock();
+        try {
+            abortRequested = false;
+        } finally {
+            mergeLock.unlock();
+        }
+    }
+
+    public void resume() {
+        paused = false;
+        trigger();
+    }
+
+    public void shutdown() {
+        pause();
+        executor.shutdownNow();
+    }
+
+    private void runMerges() {
+        if (paused || !mergeLock.tryLock()) return;
+
+        try {
+            while (!paused) {
+                SegmentManifest manifest = SegmentManifest.load(segmentsDir);
+                List<SegmentInfo> segments = manifest.getSegments();
+
+                List<SegmentInfo> dropped = policy.findDropped(segments);
+                if (!dropped.isEmpty()) {
+                    if (SegmentManifest.replaceSegments(segmentsDir, dropped, null, new int[0])) {
+                        deleteFiles(dropped);
+                        segmentsDropped.addAndGet(dropped.size());
+                    }
+                    continue;
+                }
+
+                List<SegmentInfo> sources = policy.findMerge(segments);
+                if (sources.isEmpty()) break;
+
+                mergeOnce(sources);
+            }
+            lastError = null;
+
+        } catch (CancellationException exception) {
+            // paused; the unfinished segment has already been discarded
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        } catch (Exception exception) {
+            lastError = exception.toString();
+            System.err.println("Segment merge failed: " + exception.getMessage());
+        } finally {
+            state = "idle";
+            mergeLock.unlock();
+        }
+    }
+
+    private void mergeOnce(List<SegmentInfo> sources) throws IOException, InterruptedException {
+        state = "merging";
+        long start = System.currentTimeMillis();
+
+        SegmentMerger.Result result = merger.merge(sources);
+
+        if (!merger.publish(result)) {
+            if (result.merged() != null) deleteFiles(List.of(result.merged()));
+            return;
+        }
+        deleteFiles(sources);
+
+        long mergedBytes = result.merged() != null ? result.merged().getSizeBytes() : 0;
+        mergesCompleted.incrementAndGet();
+        segmentsMerged.addAndGet(sources.size());
+        bytesWritten.addAndGet(mergedBytes);
+
+        Map<String, Object> merge = new LinkedHashMap<>();
+        merge.put("segment", result.merged() != null ? result.merged().getName() : null);
+        merge.put("sources", sources.stream().map(SegmentInfo::getName).toList());
+        merge.put("docs", result.docIds().length);
+        merge.put("size_bytes", mergedBytes);
+        merge.put("elapsed_seconds", (System.currentTimeMillis() - start) / 1000.0);
+        lastMerge = merge;
+    }
+
+    // Readers that already mapped a deleted file keep their mapping until they drop it.
+    private void deleteFiles(List<SegmentInfo> segments) throws IOException {
+        for (SegmentInfo segment : segments) {
+            Files.deleteIfExists(segmentsDir.resolve(segment.getName() + SegmentWriter.EXTENSION));
+        }
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("state", paused ? "paused" : state);
+        status.put("indexing_active", activeIndexing.get() > 0);
+        status.put("merges_completed", mergesCompleted.get());
+        status.put("segments_merged", segmentsMerged.get());
+        status.put("segments_dropped", segmentsDropped.get());
+        status.put("bytes_written", bytesWritten.get());
+
+        try {
+            List<SegmentInfo> segments = SegmentManifest.load(segmentsDir).getSegments();
+            status.put("tiers", policy.tierCounts(segments));
+            status.put("pending_merge", !policy.findMerge(segments).isEmpty());
+        } catch (IOException exception) {
+            status.put("tiers", Map.of());
+        }
+
+        status.put("last_merge", lastMerge);
+        status.put("last_error", lastError);
+        return status;
+    }
+}
@@ -0,0 +1,33 @@
+package com.dreamteam.merge;
+
+import java.util.function.BooleanSupplier;
+
+// Caps the write rate of a merge. While indexing is active the budget drops to a quarter so
+// merges never compete with flushes for disk bandwidth.
+public class MergeThrottle {
+
+    private static final long MIN_SLEEP_NANOS = 1_000_000L;
+
+    private final long bytesPerSecond;
+    private final BooleanSupplier indexingActive;
+    private long nextFreeNanos;
+
+    public MergeThrottle(long bytesPerSecond, BooleanSupplier indexingActive) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.indexingActive = indexingActive;
+    }
+
+    public synchronized void acquire(long bytes) throws InterruptedException {
+        if (bytesPerSecond <= 0 || bytes <= 0) return;
+
+        long rate = indexingActive.getAsBoolean() ? Math.max(1, bytesPerSecond / 4) : bytesPerSecond;
+        long now = System.nanoTime();
+        if (nextFreeNanos < now) nextFreeNanos = now;
+        nextFreeNanos += bytes * 1_000_000_000L / rate;
+
+        long sleepNanos = nextFreeNanos - now;
+        if (sleepNanos >= MIN_SLEEP_NANOS) {
+            Thread.sleep(sleepNanos / 1_000_000L, (int) (sleepNanos % 1_000_000L));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.dreamteam.merge;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+import com.dreamteam.core.PostingAccumulator.Posting;
+import com.dreamteam.core.SegmentManifest;
+import com.dreamteam.core.SegmentManifest.SegmentInfo;
+import com.dreamteam.core.SegmentReader;
+import com.dreamteam.core.SegmentWriter;
+
+// Streams several segments into one: term lists are merged in sorted order, postings of
+// deleted books are dropped, and only one term's postings are held in memory at a time.
+public class SegmentMerger {
+
+    public record Result(List<SegmentInfo> sources, SegmentInfo merged, int[] docIds) {}
+
+    private final Path segmentsDir;
+    private final MergeThrottle throttle;
+    private final BooleanSupplier aborted;
+
+    public SegmentMerger(Path segmentsDir, MergeThrottle throttle, BooleanSupplier aborted) {
+        this.segmentsDir = segmentsDir;
+        this.throttle = throttle;
+        this.aborted = aborted;
+    }
+
+    // The merged segment is written but not yet live; publish it with
+    // SegmentManifest.replaceSegments. Throws CancellationException when aborted.
+    public Result merge(List<SegmentInfo> sources) throws IOException, InterruptedException {
+        List<SegmentReader> readers = new ArrayList<>(sources.size());
+        TreeMap<Integer, Integer> liveDocs = new TreeMap<>();
+        for (SegmentInfo source : sources) {
+            SegmentReader reader = SegmentReader.open(segmentsDir.resolve(source.getName() + SegmentWriter.EXTENSION));
+            readers.add(reader);
+            int[] sourceDocs = reader.docIds();
+            for (int i = 0; i < sourceDocs.length; i++) {
+                if (!source.isDeleted(sourceDocs[i])) liveDocs.put(sourceDocs[i], reader.docLengths()[i]);
+            }
+        }
+
+        if (liveDocs.isEmpty()) {
+            return new Result(sources, null, new int[0]);
+        }
+
+        int[] docIds = liveDocs.keySet().stream().mapToInt(Integer::intValue).toArray();
+        int[] docLengths = liveDocs.values().stream().mapToInt(Integer::intValue).toArray();
+
+        PriorityQueue<Integer> queue = new PriorityQueue<>(
+                Comparator.comparing((Integer i) -> readers.get(i).term()).thenComparingInt(i -> i));
+        for (int i = 0; i < readers.size(); i++) {
+            if (readers.get(i).nextTerm()) queue.add(i);
+        }
+
+        try (SegmentWriter.Output output = new SegmentWriter(segmentsDir).open(docIds, docLengths)) {
+            List<Posting> postings = new ArrayList<>();
+            long written = output.bytesWritten();
+
+            while (!queue.isEmpty()) {
+                if (aborted.getAsBoolean()) {
+                    throw new CancellationException("Merge aborted");
+                }
+
+                String term = readers.get(queue.peek()).term();
+                postings.clear();
+
+                while (!queue.isEmpty() && readers.get(queue.peek()).term().equals(term)) {
+                    int i = queue.poll();
+                    SegmentReader reader = readers.get(i);
+                    SegmentInfo source = sources.get(i);
+                    for (Posting posting : reader.postings()) {
+                        if (!source.isDeleted(posting.bookId())) postings.add(posting);
+                    }
+                    if (reader.nextTerm()) queue.add(i);
+                }
+
+                if (postings.isEmpty()) continue;
+
+                postings.sort(Comparator.comparingInt(Posting::bookId));
+                output.addTerm(term, postings);
+
+                throttle.acquire(output.bytesWritten() - written);
+                written = output.bytesWritten();
+            }
+
+            SegmentInfo merged = output.finish();
+            return new Result(sources, merged, docIds);
+        }
+    }
+
+    public boolean publish(Result result) throws IOException {
+        return SegmentManifest.replaceSegments(segmentsDir, result.sources(), result.merged(), result.docIds());
+    }
+}
@@ -0,0 +1,94 @@
+package com.dreamteam.merge;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.dreamteam.core.SegmentManifest.SegmentInfo;
+
+// Groups segments into size tiers (floor, floor * factor, floor * factor^2, ...) by their live
+// size and merges the smallest segments of a tier once it holds mergeFactor of them. Segments
+// whose deleted share exceeds maxDeletedRatio are rewritten on their own to reclaim the space.
+// No merge produces more than maxSegmentBytes, which stays below the 2 GiB a segment can address;
+// segments over half that size are left alone until deletions shrink them.
+public class TieredMergePolicy {
+
+    public static final long MAX_SEGMENT_BYTES_LIMIT = Integer.MAX_VALUE;
+
+    private final int mergeFactor;
+    private final long floorBytes;
+    private final double maxDeletedRatio;
+    private final long maxSegmentBytes;
+
+    public TieredMergePolicy(int mergeFactor, long floorBytes, double maxDeletedRatio, long maxSegmentBytes) {
+        this.mergeFactor = Math.max(2, mergeFactor);
+        this.floorBytes = Math.max(1, floorBytes);
+        this.maxDeletedRatio = maxDeletedRatio;
+        this.maxSegmentBytes = Math.max(this.floorBytes, Math.min(maxSegmentBytes, MAX_SEGMENT_BYTES_LIMIT));
+    }
+
+    public int tier(SegmentInfo segment) {
+        long size = liveBytes(segment);
+        int tier = 0;
+        long limit = floorBytes;
+        while (size > limit && limit < Long.MAX_VALUE / mergeFactor) {
+            limit *= mergeFactor;
+            tier++;
+        }
+        return tier;
+    }
+
+    public Map<Integer, Integer> tierCounts(List<SegmentInfo> segments) {
+        Map<Integer, Integer> counts = new TreeMap<>();
+        for (SegmentInfo segment : segments) {
+            counts.merge(tier(segment), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    // Segments with no live book left; they are dropped without being rewritten.
+    public List<SegmentInfo> findDropped(List<SegmentInfo> segments) {
+        List<SegmentInfo> dropped = new ArrayList<>();
+        for (SegmentInfo segment : segments) {
+            if (segment.getLiveDocCount() <= 0) dropped.add(segment);
+        }
+        return dropped;
+    }
+
+    // Returns the next set of segments to merge, or an empty list if the index is in shape.
+    public List<SegmentInfo> findMerge(List<SegmentInfo> segments) {
+        Map<Integer, List<SegmentInfo>> tiers = new TreeMap<>();
+        for (SegmentInfo segment : segments) {
+            if (segment.getLiveDocCount() <= 0 || liveBytes(segment) > maxSegmentBytes / 2) continue;
+            tiers.computeIfAbsent(tier(segment), t -> new ArrayList<>()).add(segment);
+        }
+
+        for (List<SegmentInfo> tier : tiers.values()) {
+            if (tier.size() < mergeFactor) continue;
+            tier.sort(Comparator.comparingLong(this::liveBytes));
+
+            // the smallest segments of the tier, as many as fit under the size cap
+            List<SegmentInfo> merge = new ArrayList<>();
+            long mergedBytes = 0;
+            for (SegmentInfo segment : tier) {
+                if (merge.size() == mergeFactor || mergedBytes + liveBytes(segment) > maxSegmentBytes) break;
+                merge.add(segment);
+                mergedBytes += liveBytes(segment);
+            }
+            if (merge.size() >= 2) return merge;
+        }
+
+        for (SegmentInfo segment : segments) {
+            if (segment.getLiveDocCount() > 0 && segment.deletedRatio() > maxDeletedRatio) {
+                return List.of(segment);
+            }
+        }
+        return List.of();
+    }
+
+    private long liveBytes(SegmentInfo segment) {
+        return (long) (segment.getSizeBytes() * (1.0 - segment.deletedRatio()));
+    }
+}
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -15,6 +16,7 @@ public class ProgressTracker {
     private String lastDay;
     private String lastHour;
     private int lastIndexedId;
+    private List<Integer> indexedAhead;
 
     public ProgressTracker() {
         this.lastDay = null;
@@ -76,6 +78,14 @@ public class ProgressTracker {
         this.lastIndexedId = lastIndexedId;
     }
 
+    public List<Integer> getIndexedAhead() {
+        return indexedAhead != null ? indexedAhead : List.of();
+    }
+
+    public void setIndexedAhead(List<Integer> indexedAhead) {
+        this.indexedAhead = indexedAhead;
+    }
+
     @Override
     public String toString() {
         return String.format("Progress{day=%s, hour=%s, id=%d}", lastDay, lastHour, lastIndexedId);
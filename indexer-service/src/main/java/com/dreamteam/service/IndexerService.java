@@ -4,12 +4,16 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.dreamteam.core.InvertedIndexer;
 import com.dreamteam.core.MetadataCatalogBuilder;
+import com.dreamteam.core.SegmentManifest;
 import com.dreamteam.datamart.DatamartInitializer;
 import com.dreamteam.datamart.MetadataStore;
+import com.dreamteam.merge.MergeScheduler;
 import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
 
@@ -23,6 +27,15 @@ public class IndexerService {
     private final String dbPath;
     private final String indexProgressPath;
     private final String catalogProgressPath;
+    private final String segmentsDir;
+    private final long ramBudgetBytes;
+    private final int indexThreads;
+    private final MergeScheduler mergeScheduler;
+
+    // Rebuilds and single-book updates write the same files in both modes: a rebuild wipes the
+    // segments or, in TSV mode, rewrites every book's postings in the term files an update edits.
+    // The lock keeps the two from running at the same time; updates also run one at a time.
+    private final ReentrantLock indexLock = new ReentrantLock();
 
     public IndexerService(
             String datalakePath,
@@ -32,56 +45,102 @@ public class IndexerService {
             String indexProgressPath,
             String catalogProgressPath) {
 
+        this(datalakePath, indexOutputDir, catalogOutputPath, dbPath,
+                indexProgressPath, catalogProgressPath, null, 0, 1, null);
+    }
+
+    public IndexerService(
+            String datalakePath,
+            String indexOutputDir,
+            String catalogOutputPath,
+            String dbPath,
+            String indexProgressPath,
+            String catalogProgressPath,
+            String segmentsDir,
+            long ramBudgetBytes,
+            int indexThreads,
+            MergeScheduler mergeScheduler) {
+
         this.datalakePath = datalakePath;
         this.indexOutputDir = indexOutputDir;
         this.catalogOutputPath = catalogOutputPath;
         this.dbPath = dbPath;
         this.indexProgressPath = indexProgressPath;
         this.catalogProgressPath = catalogProgressPath;
+        this.segmentsDir = segmentsDir;
+        this.ramBudgetBytes = ramBudgetBytes;
+        this.indexThreads = indexThreads;
+        this.mergeScheduler = mergeScheduler;
     }
 
-    public Map<String, Object> updateBookIndex(int bookId) {
-        long start = System.currentTimeMillis();
+    private InvertedIndexer newIndexer() {
+        return new InvertedIndexer(datalakePath, indexOutputDir, indexProgressPath,
+                segmentsDir, ramBudgetBytes, indexThreads);
+    }
 
+    public Map<String, Object> updateBookIndex(int bookId) {
+        indexLock.lock();
         try {
-            Files.deleteIfExists(Paths.get(indexProgressPath));
+            return updateBookIndexLocked(bookId);
+        } finally {
+            indexLock.unlock();
+        }
+    }
 
-            InvertedIndexer indexer = new InvertedIndexer(
-                    datalakePath,
-                    indexOutputDir,
-                    indexProgressPath
-            );
+    private Map<String, Object> updateBookIndexLocked(int bookId) {
+        long start = System.currentTimeMillis();
+        if (mergeScheduler != null) mergeScheduler.indexingStarted();
 
-            indexer.buildIndex();
+        try {
+            InvertedIndexer indexer = newIndexer();
+            String segment = indexer.updateBookIndex(bookId);
+            if (mergeScheduler != null) mergeScheduler.trigger();
 
             double elapsed = (System.currentTimeMillis() - start) / 1000.0;
 
-            return Map.of(
-                    "status", "ok",
-                    "message", "TSV index rebuilt successfully (full reindex)",
-                    "elapsed_seconds", elapsed
-            );
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("status", "ok");
+            response.put("book_id", bookId);
+            response.put("message", segment != null
+                    ? "Book indexed into delta segment " + segment
+                    : "Book postings replaced in TSV index");
+            response.put("elapsed_seconds", elapsed);
+            return response;
 
         } catch (Exception e) {
             return Map.of(
                     "status", "error",
-                    "message", e.getMessage()
+                    "message", String.valueOf(e.getMessage())
             );
+        } finally {
+            if (mergeScheduler != null) mergeScheduler.indexingFinished();
         }
     }
 
     public Map<String, Object> rebuildIndex() {
+        indexLock.lock();
+        try {
+            return rebuildIndexLocked();
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
+    private Map<String, Object> rebuildIndexLocked() {
         long startTime = System.currentTimeMillis();
         int booksProcessed = 0;
 
+        // Merges would race the segment wipe; they resume on the fresh segments afterwards.
+        if (mergeScheduler != null) mergeScheduler.pause();
+
         try {
             Files.deleteIfExists(Paths.get(indexProgressPath));
             Files.deleteIfExists(Paths.get(catalogProgressPath));
 
             DatamartInitializer.initDatamart(dbPath);
 
-            InvertedIndexer indexer =
-                    new InvertedIndexer(datalakePath, indexOutputDir, indexProgressPath);
+            InvertedIndexer indexer = newIndexer();
+            indexer.clearSegments();
             indexer.buildIndex();
 
             MetadataCatalogBuilder catalogBuilder =
@@ -103,22 +162,37 @@ public class IndexerService {
                     "books_processed", booksProcessed,
                     "error", exception.getMessage()
             );
+        } finally {
+            if (mergeScheduler != null) mergeScheduler.resume();
         }
     }
 
     public Map<String, Object> getStatus() {
         try {
-            Path indexDir = Paths.get(indexOutputDir);
+            Path indexDir = Paths.get(segmentsDir != null ? segmentsDir : indexOutputDir);
 
             long indexSize = folderSize(indexDir);
             long lastUpdateMillis = lastModifiedInFolder(indexDir);
             int booksIndexed = countBooksInCatalog();
 
-            return Map.of(
-                    "books_indexed", booksIndexed,
-                    "last_update", lastUpdateMillis == 0 ? "never" : String.valueOf(lastUpdateMillis),
-                    "index_size_MB", String.format("%.2f", indexSize / (1024.0 * 1024.0))
-            );
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("books_indexed", booksIndexed);
+            status.put("last_update", lastUpdateMillis == 0 ? "never" : String.valueOf(lastUpdateMillis));
+            status.put("index_size_MB", String.format("%.2f", indexSize / (1024.0 * 1024.0)));
+
+            if (segmentsDir != null) {
+                SegmentManifest manifest = SegmentManifest.load(indexDir);
+                status.put("index_mode", "segment");
+                status.put("segments", manifest.getSegments().size());
+                status.put("generation", manifest.getGeneration());
+                if (mergeScheduler != null) {
+                    status.put("merge", mergeScheduler.getStatus());
+                }
+            } else {
+                status.put("index_mode", "tsv");
+            }
+
+            return status;
 
         } catch (IOException exception) {
             return Map.of("error", exception.getMessage());
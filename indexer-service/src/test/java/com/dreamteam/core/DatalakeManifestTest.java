@@ -0,0 +1,68 @@
+package com.dreamteam.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DatalakeManifestTest {
+
+    @TempDir
+    Path datalake;
+
+    @Test
+    void booksComeInDayHourBookOrderWithNumericHours() throws IOException {
+        Files.writeString(datalake.resolve(DatalakeManifest.FILE_NAME), String.join("\n",
+                "7\t20250101\t10\t1\t1\t1\t2025-01-01T10:00:00Z",
+                "3\t20250101\t9\t1\t1\t1\t2025-01-01T09:00:00Z",
+                "5\t20250101\t9\t1\t1\t1\t2025-01-01T09:30:00Z",
+                "1\t20250102\t0\t1\t1\t1\t2025-01-02T00:00:00Z",
+                "3\t20250102\t2\t1\t1\t1\t2025-01-02T02:00:00Z",
+                ""), StandardCharsets.UTF_8);
+
+        DatalakeManifest manifest = DatalakeManifest.load(datalake);
+        assertEquals(4, manifest.size());
+        // book 3 was ingested again; its later line wins
+        assertEquals(List.of(5, 7, 1, 3), manifest.books().stream().map(DatalakeBook::bookId).toList());
+        assertEquals(datalake.resolve("20250102").resolve("2").resolve("3"), manifest.find(3).folder());
+        assertNull(manifest.find(42));
+    }
+
+    @Test
+    void tornAndMalformedLinesAreSkipped() throws IOException {
+        Files.writeString(datalake.resolve(DatalakeManifest.FILE_NAME), String.join("\n",
+                "3\t20250101\t9\t1\t1\t1\t2025-01-01T09:00:00Z",
+                "x\t20250101\t9\t1\t1\t1\t2025-01-01T09:10:00Z",
+                "5\t20250101\t9\t1\t1\t1\t2025-01-01T09:30:00Z",
+                // ingestion died halfway through appending this line
+                "8\t2025010"), StandardCharsets.UTF_8);
+
+        DatalakeManifest manifest = DatalakeManifest.load(datalake);
+        assertEquals(List.of(3, 5), manifest.books().stream().map(DatalakeBook::bookId).toList());
+        assertNull(manifest.find(8));
+    }
+
+    @Test
+    void withoutAManifestTheFoldersAreWalked() throws IOException {
+        writeBody("20250101", "10", 2);
+        writeBody("20250101", "9", 4);
+        Files.createDirectories(datalake.resolve("20250101").resolve("9").resolve("6"));
+
+        DatalakeManifest manifest = DatalakeManifest.load(datalake);
+        assertEquals(List.of(4, 2), manifest.books().stream().map(DatalakeBook::bookId).toList());
+        assertNull(manifest.find(6));
+    }
+
+    private void writeBody(String day, String hour, int bookId) throws IOException {
+        Path folder = datalake.resolve(day).resolve(hour).resolve(String.valueOf(bookId));
+        Files.createDirectories(folder);
+        Files.writeString(folder.resolve("body.txt"), "body", StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,100 @@
+package com.dreamteam.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.dreamteam.progress.ProgressTracker;
+
+class IndexCheckpointTest {
+
+    private static final List<DatalakeBook> DATALAKE = List.of(
+            new DatalakeBook("20250101", "9", 11, Path.of("a")),
+            new DatalakeBook("20250101", "9", 12, Path.of("b")),
+            new DatalakeBook("20250101", "10", 3, Path.of("c")),
+            new DatalakeBook("20250101", "10", 4, Path.of("d")),
+            new DatalakeBook("20250102", "0", 1, Path.of("e")),
+            new DatalakeBook("20250102", "0", 2, Path.of("f")));
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void booksIndexedAheadSurviveRepeatedCrashes() {
+        String progressPath = dir.resolve("progress.json").toString();
+
+        // first run: two books in the middle become durable, then the indexer dies
+        IndexCheckpoint first = new IndexCheckpoint(DATALAKE, new ProgressTracker(), progressPath);
+        first.markDurable(List.of(2, 3));
+        assertEquals(List.of(3, 4), ProgressTracker.load(progressPath).getIndexedAhead());
+
+        // second run resumes: the books indexed ahead are not indexed again, and another book
+        // further on becomes durable before the indexer dies again
+        ProgressTracker progress = ProgressTracker.load(progressPath);
+        List<DatalakeBook> books = booksAfter(progress);
+        IndexCheckpoint second = new IndexCheckpoint(books, progress, progressPath);
+        assertTrue(second.isDurable(2));
+        assertTrue(second.isDurable(3));
+        assertFalse(second.isDurable(5));
+        assertEquals(4, second.pendingCount());
+        second.markDurable(List.of(5));
+        assertEquals(List.of(3, 4, 2), ProgressTracker.load(progressPath).getIndexedAhead());
+
+        // third run closes the gap: progress moves past everything up to the last book indexed
+        // ahead of the gap, and only the book beyond it is still recorded
+        progress = ProgressTracker.load(progressPath);
+        books = booksAfter(progress);
+        IndexCheckpoint third = new IndexCheckpoint(books, progress, progressPath);
+        third.markDurable(List.of(0, 1));
+        ProgressTracker saved = ProgressTracker.load(progressPath);
+        assertEquals("20250101", saved.getLastDay());
+        assertEquals("10", saved.getLastHour());
+        assertEquals(4, saved.getLastIndexedId());
+        assertEquals(List.of(2), saved.getIndexedAhead());
+        assertEquals(2, third.durableCount());
+
+        // fourth run: the remaining pending book completes the datalake
+        progress = ProgressTracker.load(progressPath);
+        books = booksAfter(progress);
+        assertEquals(2, books.size());
+        IndexCheckpoint fourth = new IndexCheckpoint(books, progress, progressPath);
+        fourth.markDurable(List.of(0));
+        saved = ProgressTracker.load(progressPath);
+        assertEquals("20250102", saved.getLastDay());
+        assertEquals(2, saved.getLastIndexedId());
+        assertEquals(List.of(), saved.getIndexedAhead());
+    }
+
+    @Test
+    void leadingBooksIndexedAheadAdvanceProgressOnResume() {
+        String progressPath = dir.resolve("progress.json").toString();
+        new IndexCheckpoint(DATALAKE, new ProgressTracker(), progressPath).markDurable(List.of(0, 2));
+
+        // book 0 moved the watermark already; book 2 leads once book 1 is done
+        ProgressTracker progress = ProgressTracker.load(progressPath);
+        assertEquals(11, progress.getLastIndexedId());
+        IndexCheckpoint resumed = new IndexCheckpoint(booksAfter(progress), progress, progressPath);
+        resumed.markDurable(List.of(0));
+        assertEquals(3, ProgressTracker.load(progressPath).getLastIndexedId());
+        assertEquals(List.of(), ProgressTracker.load(progressPath).getIndexedAhead());
+    }
+
+    // The books a resumed run hands the checkpoint: everything past the saved progress.
+    private static List<DatalakeBook> booksAfter(ProgressTracker progress) {
+        List<DatalakeBook> books = new ArrayList<>();
+        boolean past = progress.getLastDay() == null;
+        for (DatalakeBook book : DATALAKE) {
+            if (past) books.add(book);
+            past |= book.day().equals(progress.getLastDay()) && book.hour().equals(progress.getLastHour())
+                    && book.bookId() == progress.getLastIndexedId();
+        }
+        return books;
+    }
+}
@@ -0,0 +1,106 @@
+package com.dreamteam.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class InvertedIndexerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void tsvUpdateDropsTermsTheBookNoLongerContains() throws IOException {
+        Path datalake = dir.resolve("datalake");
+        Path tsv = dir.resolve("tsv");
+        writeBody(datalake, 1, "whale ship captain");
+        writeBody(datalake, 2, "whale harpoon");
+
+        InvertedIndexer indexer = new InvertedIndexer(datalake.toString(), tsv.toString(),
+                dir.resolve("progress.json").toString());
+        indexer.buildIndex();
+        assertEquals(List.of(1), books(tsv, "captain"));
+
+        writeBody(datalake, 1, "whale ship");
+        indexer.updateBookIndex(1);
+
+        assertFalse(Files.exists(tsv.resolve("captain.tsv")));
+        assertEquals(List.of(1, 2), books(tsv, "whale"));
+        assertEquals(List.of(1), books(tsv, "ship"));
+        assertEquals(List.of(2), books(tsv, "harpoon"));
+    }
+
+    @Test
+    void tsvUpdateOfABookFromAFullBuildFindsOldTermsByScanning() throws IOException {
+        Path datalake = dir.resolve("datalake");
+        Path tsv = dir.resolve("tsv");
+        writeBody(datalake, 1, "whale captain");
+        writeBody(datalake, 2, "captain");
+
+        InvertedIndexer indexer = new InvertedIndexer(datalake.toString(), tsv.toString(),
+                dir.resolve("progress.json").toString());
+        indexer.buildIndex();
+        // full builds keep no term lists
+        assertFalse(Files.exists(tsv.resolve("books").resolve("1.terms")));
+
+        writeBody(datalake, 1, "whale");
+        indexer.updateBookIndex(1);
+
+        assertEquals(List.of(2), books(tsv, "captain"));
+        assertTrue(Files.exists(tsv.resolve("books").resolve("1.terms")));
+    }
+
+    @Test
+    void workersShareOneRamBudget() throws IOException {
+        Path datalake = dir.resolve("datalake");
+        Path segments = dir.resolve("segments");
+        PostingAccumulator all = new PostingAccumulator(Long.MAX_VALUE);
+        for (int bookId = 1; bookId <= 40; bookId++) {
+            StringBuilder body = new StringBuilder();
+            for (int word = 0; word < 20; word++) body.append(' ').append(letters(bookId * 100 + word));
+            writeBody(datalake, bookId, body.toString());
+            all.addBook(bookId, new BookTokenizer().tokenize(body.toString()));
+        }
+
+        // room for every book, but not if each of the four workers only had a quarter of it
+        InvertedIndexer indexer = new InvertedIndexer(datalake.toString(), dir.resolve("tsv").toString(),
+                dir.resolve("progress.json").toString(), segments.toString(), all.estimatedBytes() + 1, 4);
+        indexer.buildIndex();
+
+        // nothing is flushed before the end, where each buffer becomes one segment: the four
+        // workers' and the submitting thread's, which indexes books itself while the queue is full
+        List<SegmentManifest.SegmentInfo> written = SegmentManifest.load(segments).getSegments();
+        assertTrue(written.size() <= 5, "expected one segment per buffer at most, got " + written.size());
+        assertEquals(40, written.stream().mapToInt(SegmentManifest.SegmentInfo::getDocCount).sum());
+    }
+
+    private static void writeBody(Path datalake, int bookId, String body) throws IOException {
+        Path folder = datalake.resolve("20250101").resolve("9").resolve(String.valueOf(bookId));
+        Files.createDirectories(folder);
+        Files.writeString(folder.resolve("body.txt"), body, StandardCharsets.UTF_8);
+    }
+
+    // A distinct all-letter word per number; the tokenizer drops words with digits.
+    private static String letters(int number) {
+        StringBuilder word = new StringBuilder("w");
+        for (int n = number; n > 0; n /= 26) word.append((char) ('a' + n % 26));
+        return word.toString();
+    }
+
+    private static List<Integer> books(Path tsv, String term) throws IOException {
+        return Files.readAllLines(tsv.resolve(term + ".tsv"), StandardCharsets.UTF_8).stream()
+                .filter(line -> !line.isEmpty())
+                .map(line -> Integer.parseInt(line.substring(0, line.indexOf('\t'))))
+                .sorted()
+                .toList();
+    }
+}
@@ -0,0 +1,48 @@
+package com.dreamteam.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SegmentManifestTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void publishDeletesReplacedBooksFromDocIdsInTheManifest() throws Exception {
+        SegmentWriter writer = new SegmentWriter(dir);
+        writer.flush(accumulator(1, 5, 300, 70000));
+
+        // the older segment file is gone, so deletions can only come from segments.json
+        String older = SegmentManifest.load(dir).getSegments().get(0).getName();
+        Files.delete(dir.resolve(older + SegmentWriter.EXTENSION));
+
+        writer.flush(accumulator(2, 5, 70000));
+
+        List<SegmentManifest.SegmentInfo> segments = SegmentManifest.load(dir).getSegments();
+        assertEquals(2, segments.size());
+        SegmentManifest.SegmentInfo first = segments.get(0);
+        assertEquals(List.of(5, 70000), first.getDeleted());
+        assertTrue(first.contains(300));
+        assertFalse(first.contains(2));
+        assertEquals(2, first.getLiveDocCount());
+        assertTrue(segments.get(1).getDeleted().isEmpty());
+    }
+
+    private static PostingAccumulator accumulator(int... bookIds) {
+        PostingAccumulator accumulator = new PostingAccumulator(1 << 20);
+        for (int bookId : bookIds) {
+            accumulator.addBook(bookId, Map.of("word", new int[] {0}));
+        }
+        return accumulator;
+    }
+}
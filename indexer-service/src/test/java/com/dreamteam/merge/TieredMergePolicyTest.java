@@ -0,0 +1,43 @@
+package com.dreamteam.merge;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.dreamteam.core.SegmentManifest.SegmentInfo;
+
+class TieredMergePolicyTest {
+
+    private static final long MB = 1024L * 1024L;
+
+    private final TieredMergePolicy policy = new TieredMergePolicy(8, 2 * MB, 0.3, 1024 * MB);
+
+    @Test
+    void fullTierOfSmallSegmentsMergesMergeFactorOfThem() {
+        assertEquals(8, policy.findMerge(segments(10, MB)).size());
+    }
+
+    @Test
+    void mergeNeverExceedsTheMaxSegmentSize() {
+        List<SegmentInfo> merge = policy.findMerge(segments(8, 300 * MB));
+        assertEquals(3, merge.size());
+        assertTrue(merge.stream().mapToLong(SegmentInfo::getSizeBytes).sum() <= 1024 * MB);
+    }
+
+    @Test
+    void segmentsOverHalfTheMaxSizeAreNotMerged() {
+        assertTrue(policy.findMerge(segments(8, 600 * MB)).isEmpty());
+    }
+
+    private static List<SegmentInfo> segments(int count, long sizeBytes) {
+        List<SegmentInfo> segments = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            segments.add(new SegmentInfo("seg-" + i, new int[] {i}, sizeBytes));
+        }
+        return segments;
+    }
+}
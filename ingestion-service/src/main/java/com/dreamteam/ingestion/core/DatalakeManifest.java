@@ -0,0 +1,159 @@
+package com.dreamteam.ingestion.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Append-only list of the books in the datalake, one tab-separated line per ingested book:
+//
+//   bookId  day  hour  rawBytes  headerBytes  bodyBytes  ingestedAt
+//
+// Readers key it by book id (a later line wins), so nobody has to walk day/hour folders to
+// find a book. A datalake that predates the manifest is scanned once to create it. A line left
+// torn by a crash mid-append is skipped with a warning; the next append starts a fresh line.
+public class DatalakeManifest {
+	public static final String FILE_NAME = "manifest.tsv";
+
+	public record Entry(int bookId, String day, String hour,
+						long rawBytes, long headerBytes, long bodyBytes, String ingestedAt) {
+
+		public Path folder(Path datalakeDir) {
+			return DatalakeLayout.bookRoot(datalakeDir, day, hour, bookId);
+		}
+
+		String toLine() {
+			return String.join("\t", String.valueOf(bookId), day, hour,
+					String.valueOf(rawBytes), String.valueOf(headerBytes), String.valueOf(bodyBytes), ingestedAt);
+		}
+
+		// Throws IllegalArgumentException for a malformed or truncated line.
+		static Entry parse(String line) {
+			String[] fields = line.split("\t");
+			if (fields.length != 7) {
+				throw new IllegalArgumentException("expected 7 fields, found " + fields.length);
+			}
+			try {
+				Instant.parse(fields[6]);
+			} catch (DateTimeParseException exception) {
+				throw new IllegalArgumentException("bad ingestedAt " + fields[6]);
+			}
+			return new Entry(Integer.parseInt(fields[0]), fields[1], fields[2],
+					Long.parseLong(fields[3]), Long.parseLong(fields[4]), Long.parseLong(fields[5]), fields[6]);
+		}
+	}
+
+	private final Path datalakeDir;
+	private final Path file;
+	private final Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+	private boolean endsMidLine;
+
+	public DatalakeManifest(Path datalakeDir) {
+		this.datalakeDir = datalakeDir;
+		this.file = datalakeDir.resolve(FILE_NAME);
+
+		try {
+			if (Files.exists(file)) {
+				load();
+			} else if (Files.isDirectory(datalakeDir)) {
+				bootstrap();
+			}
+		} catch (IOException exception) {
+			System.err.println("Warning: cannot read datalake manifest " + file + ": " + exception.getMessage());
+		}
+	}
+
+	public Optional<Entry> get(int bookId) {
+		return Optional.ofNullable(entries.get(bookId));
+	}
+
+	public List<Integer> bookIds() {
+		return entries.keySet().stream().sorted().toList();
+	}
+
+	public synchronized void append(Entry entry) throws IOException {
+		Files.createDirectories(datalakeDir);
+		Files.writeString(file, (endsMidLine ? "\n" : "") + entry.toLine() + "\n", StandardCharsets.UTF_8,
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		endsMidLine = false;
+		entries.put(entry.bookId(), entry);
+	}
+
+	private void load() throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				if (line.isBlank()) continue;
+				try {
+					Entry entry = Entry.parse(line);
+					entries.put(entry.bookId(), entry);
+				} catch (IllegalArgumentException exception) {
+					System.err.println("Warning: skipping malformed line " + lineNumber + " of " + file
+							+ ": " + exception.getMessage());
+				}
+			}
+		}
+		endsMidLine = endsMidLine(file);
+	}
+
+	private static boolean endsMidLine(Path file) throws IOException {
+		try (SeekableByteChannel channel = Files.newByteChannel(file)) {
+			if (channel.size() == 0) return false;
+			ByteBuffer last = ByteBuffer.allocate(1);
+			channel.position(channel.size() - 1).read(last);
+			return last.get(0) != '\n';
+		}
+	}
+
+	private void bootstrap() throws IOException {
+		List<Entry> found = new ArrayList<>();
+
+		for (Path dayFolder : listDirectories(datalakeDir)) {
+			for (Path hourFolder : listDirectories(dayFolder)) {
+				for (Path bookFolder : listDirectories(hourFolder)) {
+					String name = bookFolder.getFileName().toString();
+					if (!name.matches("\\d+") || !Files.exists(bookFolder.resolve("body.txt"))) continue;
+
+					found.add(new Entry(Integer.parseInt(name),
+							dayFolder.getFileName().toString(), hourFolder.getFileName().toString(),
+							sizeOf(bookFolder.resolve("raw.txt")),
+							sizeOf(bookFolder.resolve("header.txt")),
+							sizeOf(bookFolder.resolve("body.txt")),
+							Files.getLastModifiedTime(bookFolder).toInstant().toString()));
+				}
+			}
+		}
+
+		found.sort(Comparator.comparing(Entry::day).thenComparing(Entry::hour).thenComparingInt(Entry::bookId));
+		for (Entry entry : found) {
+			append(entry);
+		}
+		System.out.printf("Datalake manifest created with %d existing books%n", found.size());
+	}
+
+	private static List<Path> listDirectories(Path folder) throws IOException {
+		try (Stream<Path> children = Files.list(folder)) {
+			return children.filter(Files::isDirectory).sorted().collect(Collectors.toList());
+		}
+	}
+
+	private static long sizeOf(Path file) throws IOException {
+		return Files.exists(file) ? Files.size(file) : 0;
+	}
+}
@@ -10,7 +10,6 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Stream;
 
 public class IngestionService {
 
@@ -18,10 +17,12 @@ public class IngestionService {
 
 	private final Path datalakeDir;
 	private final Path logFile;
+	private final DatalakeManifest manifest;
 
 	public IngestionService(String datalakeDir, String logFile) {
 		this.datalakeDir = Paths.get(datalakeDir);
 		this.logFile = Paths.get(logFile);
+		this.manifest = new DatalakeManifest(this.datalakeDir);
 	}
 
 	public IngestionResult ingest(int bookId) {
@@ -42,8 +43,13 @@ public class IngestionService {
 			Files.writeString(rawFile, raw, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
 
 			var parts = GutenbergSplitter.splitHeaderBody(raw);
-			Files.writeString(base.resolve("header.txt"), parts.header(), StandardCharsets.UTF_8);
-			Files.writeString(base.resolve("body.txt"), parts.body(), StandardCharsets.UTF_8);
+			Path headerFile = base.resolve("header.txt");
+			Path bodyFile = base.resolve("body.txt");
+			Files.writeString(headerFile, parts.header(), StandardCharsets.UTF_8);
+			Files.writeString(bodyFile, parts.body(), StandardCharsets.UTF_8);
+
+			manifest.append(new DatalakeManifest.Entry(bookId, day, hour,
+					Files.size(rawFile), Files.size(headerFile), Files.size(bodyFile), now.toString()));
 
 			log(String.format("%s;book=%d;path=%s;bytes=%d",
 					now.toString(), bookId, relativize(base), raw.length()));
@@ -59,44 +65,11 @@ public class IngestionService {
 	}
 
 	public List<Integer> listBooks() {
-		if (!Files.exists(datalakeDir)) return List.of();
-
-		try (Stream<String> lines = Files.lines(logFile)) {
-			return lines
-				.filter(line -> line.contains(";book="))
-				.map(line -> line.substring(line.indexOf(";book=") + 6))
-				.map(line -> line.substring(0, line.indexOf(";")))
-				.map(Integer::parseInt)
-				.distinct()
-				.sorted()
-				.toList();
-		} catch (IOException exception) {
-			return List.of();
-		}
+		return manifest.bookIds();
 	}
 
 	public Optional<Path> findExistingBook(int bookId) {
-		if (!Files.exists(logFile)) return Optional.empty();
-
-		try (Stream<String> lines = Files.lines(logFile)) {
-			Optional<String> logEntry = lines
-				.filter(line -> line.contains(String.format(";book=%d;", bookId)))
-				.findFirst();
-
-			if (logEntry.isPresent()) {
-				String line = logEntry.get();
-				int pathStart = line.indexOf("path=") + 5;
-				int pathEnd = line.indexOf(";bytes=");
-				
-				if (pathEnd == -1) pathEnd = line.length(); 
-
-				String relativePath = line.substring(pathStart, pathEnd);
-				return Optional.of(datalakeDir.resolve(relativePath));
-			}
-
-		} catch (IOException exception) {
-		}
-		return Optional.empty(); 
+		return manifest.get(bookId).map(entry -> entry.folder(datalakeDir));
 	}
 
 	private String relativize(Path path) {
@@ -0,0 +1,74 @@
+package com.dreamteam.ingestion.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DatalakeManifestTest {
+
+	@TempDir
+	Path datalake;
+
+	@Test
+	void appendedEntriesSurviveReopeningAndLaterLinesWin() throws IOException {
+		DatalakeManifest manifest = new DatalakeManifest(datalake);
+		manifest.append(new DatalakeManifest.Entry(84, "20250101", "9", 300, 100, 200, "2025-01-01T09:00:00Z"));
+		manifest.append(new DatalakeManifest.Entry(11, "20250101", "9", 30, 10, 20, "2025-01-01T09:05:00Z"));
+		manifest.append(new DatalakeManifest.Entry(84, "20250102", "3", 301, 100, 201, "2025-01-02T03:00:00Z"));
+
+		DatalakeManifest reopened = new DatalakeManifest(datalake);
+		assertEquals(List.of(11, 84), reopened.bookIds());
+		DatalakeManifest.Entry entry = reopened.get(84).orElseThrow();
+		assertEquals("20250102", entry.day());
+		assertEquals(201, entry.bodyBytes());
+		assertEquals(datalake.resolve("20250102").resolve("3").resolve("84"), entry.folder(datalake));
+		assertEquals(3, Files.readAllLines(datalake.resolve(DatalakeManifest.FILE_NAME)).size());
+	}
+
+	@Test
+	void tornLastLineIsSkippedAndTheNextAppendStartsAFreshLine() throws IOException {
+		Path file = datalake.resolve(DatalakeManifest.FILE_NAME);
+		Files.writeString(file, "11\t20250101\t9\t30\t10\t20\t2025-01-01T09:05:00Z\n"
+				// ingestion died halfway through appending this line
+				+ "84\t20250101\t9\t300\t100\t200\t2025-01-0");
+
+		DatalakeManifest manifest = new DatalakeManifest(datalake);
+		assertEquals(List.of(11), manifest.bookIds());
+
+		manifest.append(new DatalakeManifest.Entry(84, "20250101", "9", 300, 100, 200, "2025-01-01T09:00:00Z"));
+		assertEquals(List.of(11, 84), new DatalakeManifest(datalake).bookIds());
+		assertEquals(3, Files.readAllLines(file).size());
+	}
+
+	@Test
+	void existingDatalakeIsScannedOnceIntoAManifest() throws IOException {
+		writeBook("20250101", "10", 5, "body of five");
+		writeBook("20250101", "9", 7, "body of seven");
+		// a failed download leaves a folder without a body
+		Files.createDirectories(datalake.resolve("20250101").resolve("9").resolve("8"));
+
+		DatalakeManifest manifest = new DatalakeManifest(datalake);
+		assertEquals(List.of(5, 7), manifest.bookIds());
+		assertFalse(manifest.get(8).isPresent());
+		assertEquals("body of seven".length(), manifest.get(7).orElseThrow().bodyBytes());
+		assertTrue(Files.exists(datalake.resolve(DatalakeManifest.FILE_NAME)));
+
+		// the folder walk is not repeated once the manifest exists
+		writeBook("20250101", "11", 6, "added behind the manifest's back");
+		assertEquals(List.of(5, 7), new DatalakeManifest(datalake).bookIds());
+	}
+
+	private void writeBook(String day, String hour, int bookId, String body) throws IOException {
+		Path folder = DatalakeLayout.bookRoot(datalake, day, hour, bookId);
+		Files.createDirectories(folder);
+		Files.writeString(folder.resolve("body.txt"), body);
+	}
+}
@@ -1,21 +1,80 @@
 package com.dreamteam.search;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import com.dreamteam.search.index.DocIdBitmap;
+import com.dreamteam.search.index.IndexSnapshot;
+import com.dreamteam.search.models.SearchHit;
+import com.dreamteam.search.query.Bm25;
+import com.dreamteam.search.query.Ranking;
+import com.dreamteam.search.query.SearchAfter;
+import com.dreamteam.search.util.ConcurrencyLimiter;
 import com.dreamteam.search.util.Config;
+import com.dreamteam.search.util.LruCache;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.SerializedName;
 
 import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.util.ConcurrencyUtil;
 
 public class App {
+    private static final Gson GSON = new Gson();
+    private static final String OVERLOADED = "search service is overloaded";
+
+    // runs of the query between whitespace, parentheses and quotes, as the query parser splits them
+    private static final Pattern QUERY_RUN = Pattern.compile("[^\\s()\"]+");
+
     public static void main(String[] args) {
         String indexPath = Config.getEnvOrDefault("index.path", "indexer/inverted_index.json");
+        String segmentsDir = Config.getEnvOrDefault("index.segments.dir", "indexer/segments");
         String dbPath = Config.getEnvOrDefault("db.path", "datamart/datamart.db");
         int port = Config.getIntProperty("server.port", 7003);
+        Ranking defaultRanking = Ranking.parse(Config.getEnvOrDefault("search.ranking", "idf"), Ranking.IDF);
+        Bm25 bm25 = new Bm25(Config.getDoubleProperty("search.bm25.k1", 1.2),
+                Config.getDoubleProperty("search.bm25.b", 0.75));
+
+        int maxExpansions = Config.getIntProperty("search.expansions.max", 128);
 
-        SearchEngine engine = new SearchEngine(Path.of(indexPath));
-        MetadataDao metadataDao = new MetadataDao("jdbc:sqlite:" + dbPath);
+        SearchEngine engine = new SearchEngine(Path.of(indexPath), Path.of(segmentsDir), defaultRanking, bm25,
+                maxExpansions);
+        MetadataDao metadataDao = new MetadataDao("jdbc:sqlite:" + dbPath, Config.getIntProperty("db.pool.size", 4));
+        LruCache<CacheKey, CachedPage> resultCache = new LruCache<>(Config.getIntProperty("search.cache.size", 1000));
+        int maxBatch = Config.getIntProperty("search.batch.max", 1000);
+        ExecutorService batchPool = Executors.newFixedThreadPool(
+                Config.getIntProperty("search.batch.threads", Runtime.getRuntime().availableProcessors()), task -> {
+                    Thread thread = new Thread(task, "search-batch");
+                    thread.setDaemon(true);
+                    return thread;
+                });
 
-        Javalin app = Javalin.create(conf -> conf.http.defaultContentType = "application/json").start(port);
+        // Requests run on virtual threads where the JVM has them (Java 21+), and otherwise on a
+        // bounded pool of platform threads. Either way the limiter caps how many search at once.
+        boolean virtualThreads = Config.getBooleanProperty("server.threads.virtual", true);
+        int maxThreads = Config.getIntProperty("server.threads.max", 200);
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(
+                Config.getIntProperty("search.concurrency.max", 2 * Runtime.getRuntime().availableProcessors()),
+                Config.getIntProperty("search.concurrency.wait.ms", 200));
+
+        Javalin app = Javalin.create(conf -> {
+            conf.http.defaultContentType = "application/json";
+            conf.useVirtualThreads = virtualThreads;
+            conf.jetty.threadPool = ConcurrencyUtil.jettyThreadPool("search-http", Math.min(8, maxThreads), maxThreads,
+                    virtualThreads);
+        }).start(port);
 
         app.get("/health", ctx -> ctx.json(new Health("ok", "search", "1.0.0")));
 
@@ -28,13 +87,20 @@ public class App {
             status.put("version", "1.0.0");
             status.put("port", port);
             status.put("indexPath", indexPath);
+            status.put("segmentsDir", segmentsDir);
+            status.put("indexGeneration", engine.snapshot().generation());
+            status.put("indexDocs", engine.snapshot().docCount());
+            status.put("ranking", engine.defaultRanking().name().toLowerCase());
+            status.put("cache", resultCache.stats());
+            status.put("concurrency", limiter.stats());
+            status.put("virtualThreads", virtualThreads && ConcurrencyUtil.isLoomAvailable());
             status.put("dbPath", dbPath);
             status.put("uptimeSeconds", (System.currentTimeMillis() - startTime) / 1000);
             ctx.json(status);
         });
 
 
-        app.get("/book/{id}", ctx -> {
+        app.get("/book/{id}", limited(limiter, ctx -> {
             try {
                 int id = Integer.parseInt(ctx.pathParam("id"));
                 var book = metadataDao.getBookById(id);
@@ -43,37 +109,78 @@ public class App {
             } catch (NumberFormatException exception) {
                 ctx.status(400).result("{\"error\":\"invalid id\"}");
             }
-        });
+        }));
 
-        app.get("/search", ctx -> {
+        app.get("/search", limited(limiter, ctx -> {
             String q = ctx.queryParam("q");
             if (q == null || q.isBlank()) {
                 ctx.status(400).result("{\"error\":\"missing query param 'q'\"}");
                 return;
             }
-            String mode = ctx.queryParamAsClass("mode", String.class).getOrDefault("and");
-            String author = ctx.queryParam("author");
-            String language = ctx.queryParam("language");
-            int page = ctx.queryParamAsClass("page", Integer.class).getOrDefault(1);
-            int pageSize = ctx.queryParamAsClass("pageSize", Integer.class).getOrDefault(20);
-
-            var results = engine.search(q, mode);
-            var enriched = metadataDao.enrichAndFilter(results, author, language);
-
-            int total = enriched.size();
-            int from = Math.max(0, (page - 1) * pageSize);
-            int to = Math.min(total, from + pageSize);
-            var pageItems = enriched.subList(from, to);
-
-            var response = new SearchResponse(q, mode, page, pageSize, total, pageItems);
-            ctx.json(response);
+            SearchRequest request;
+            try {
+                request = SearchRequest.of(q, ctx.queryParamAsClass("mode", String.class).getOrDefault("and"),
+                        ctx.queryParam("rank"), ctx.queryParam("author"), ctx.queryParam("language"),
+                        ctx.queryParamAsClass("page", Integer.class).getOrDefault(1),
+                        ctx.queryParamAsClass("pageSize", Integer.class).getOrDefault(20),
+                        ctx.queryParam("search_after"), ctx.queryParamAsClass("fuzzy", Integer.class).getOrDefault(0),
+                        engine.defaultRanking());
+            } catch (IllegalArgumentException exception) {
+                ctx.status(400).json(new ErrorBody(exception.getMessage()));
+                return;
+            }
+            String format = ctx.queryParamAsClass("format", String.class).getOrDefault("json");
+            if (format.equalsIgnoreCase("ndjson")) {
+                streamPage(ctx, engine, metadataDao, engine.snapshot(), request);
+            } else if (format.equalsIgnoreCase("json")) {
+                ctx.json(search(engine, metadataDao, resultCache, engine.snapshot(), request));
+            } else {
+                ctx.status(400).json(new ErrorBody("format must be json or ndjson"));
+            }
+        }));
+
+        // The queries of a batch run concurrently against one snapshot, so they all see the same
+        // index generation and each term's postings are decoded once for the whole batch. Results
+        // come back in request order; a query with bad parameters gets an error in its place.
+        // Each query takes its own limiter slot on the batch pool, so a batch counts for as many
+        // searches as it runs; a query that gets no slot in time is answered overloaded in place.
+        app.post("/search/batch", ctx -> {
+            BatchQuery[] queries;
+            try {
+                queries = GSON.fromJson(ctx.body(), BatchQuery[].class);
+            } catch (JsonParseException exception) {
+                queries = null;
+            }
+            if (queries == null) {
+                ctx.status(400).json(new ErrorBody("expected a JSON array of queries"));
+                return;
+            }
+            if (queries.length > maxBatch) {
+                ctx.status(400).json(new ErrorBody("a batch holds at most " + maxBatch + " queries"));
+                return;
+            }
+
+            IndexSnapshot snapshot = engine.snapshot().sharingPostings();
+            List<CompletableFuture<Object>> results = new ArrayList<>(queries.length);
+            for (BatchQuery query : queries) {
+                results.add(CompletableFuture.supplyAsync(() -> {
+                    if (!limiter.acquire()) return new ErrorBody(OVERLOADED);
+                    try {
+                        return batchItem(engine, metadataDao, resultCache, snapshot, query);
+                    } finally {
+                        limiter.release();
+                    }
+                }, batchPool));
+            }
+            ctx.json(results.stream().map(CompletableFuture::join).toList());
         });
 
         app.post("/admin/reload", ctx -> {
             try {
-                engine.reload(Path.of(indexPath));
+                var snapshot = engine.reload(Path.of(indexPath), Path.of(segmentsDir));
                 metadataDao.reload("jdbc:sqlite:" + dbPath);
-                ctx.json(new Msg("reloaded"));
+                resultCache.clear();
+                ctx.json(new Msg("reloaded generation " + snapshot.generation()));
             } catch (Exception exception) {
                 ctx.status(500).json(new Msg("reload failed: " + exception.getMessage()));
             }
@@ -82,8 +189,247 @@ public class App {
         Runtime.getRuntime().addShutdownHook(new Thread(metadataDao::close));
     }
 
+    // Runs handler within the concurrency limit. When no slot frees up in time the request is
+    // answered 503 right away, so a spike sheds load instead of queueing without bound.
+    private static Handler limited(ConcurrencyLimiter limiter, Handler handler) {
+        return ctx -> {
+            if (!limiter.acquire()) {
+                ctx.status(503).header("Retry-After", "1").json(new ErrorBody(OVERLOADED));
+                return;
+            }
+            try {
+                handler.handle(ctx);
+            } finally {
+                limiter.release();
+            }
+        };
+    }
+
+    // One search against snapshot, answered from the result cache when possible.
+    private static SearchResponse search(SearchEngine engine, MetadataDao metadataDao,
+                                         LruCache<CacheKey, CachedPage> resultCache, IndexSnapshot snapshot,
+                                         SearchRequest request) {
+        // the key names the snapshot the page is computed from, so a reload can never serve a stale page
+        CacheKey key = new CacheKey(snapshot.generation(), normalize(request.q()),
+                request.mode().toLowerCase(Locale.ROOT), request.ranking(), normalizeFilter(request.author()),
+                normalizeFilter(request.language()), request.page(), request.pageSize(), request.after(),
+                request.fuzzy());
+        CachedPage cached = resultCache.get(key);
+        if (cached == null) {
+            cached = searchPage(engine, metadataDao, snapshot, request);
+            resultCache.put(key, cached);
+        }
+
+        // a full page may have a successor; the client stops at the first short or empty one
+        List<SearchHit> items = cached.items();
+        int pageSize = request.pageSize();
+        String nextCursor = pageSize >= 1 && items.size() == pageSize
+                ? new SearchAfter(items.get(pageSize - 1).score(), items.get(pageSize - 1).bookId()).encode()
+                : null;
+        return new SearchResponse(request.q(), request.mode(), request.page(), pageSize, cached.total(),
+                cached.totalExact(), items, nextCursor);
+    }
+
+    // Missing fields take the /search defaults.
+    private static Object batchItem(SearchEngine engine, MetadataDao metadataDao,
+                                    LruCache<CacheKey, CachedPage> resultCache, IndexSnapshot snapshot,
+                                    BatchQuery query) {
+        if (query == null || query.q() == null || query.q().isBlank()) return new ErrorBody("missing 'q'");
+        try {
+            SearchRequest request = SearchRequest.of(query.q(), query.mode() != null ? query.mode() : "and",
+                    query.rank(), query.author(), query.language(),
+                    query.page() != null ? query.page() : 1, query.pageSize() != null ? query.pageSize() : 20,
+                    query.searchAfter(), query.fuzzy() != null ? query.fuzzy() : 0, engine.defaultRanking());
+            return search(engine, metadataDao, resultCache, snapshot, request);
+        } catch (IllegalArgumentException exception) {
+            return new ErrorBody(exception.getMessage());
+        }
+    }
+
+    private static CachedPage searchPage(SearchEngine engine, MetadataDao metadataDao, IndexSnapshot snapshot,
+                                         SearchRequest request) {
+        SearchEngine.TopDocs top = topPage(engine, metadataDao, snapshot, request);
+        if (top == null) return fullPage(engine, metadataDao, snapshot, request);
+        var pageItems = metadataDao.enrichAndFilter(top.docs(), null, null);
+        return new CachedPage(top.totalHits(), top.totalExact(), List.copyOf(pageItems));
+    }
+
+    // The ranked, not yet enriched hits of the page, collected by the top-K search. Null when the
+    // page needs the full ranking instead: filters checked through SQL, or an unusable page window.
+    private static SearchEngine.TopDocs topPage(SearchEngine engine, MetadataDao metadataDao,
+                                                IndexSnapshot snapshot, SearchRequest request) {
+        // With the metadata bitmaps, books without metadata and books failing the filters never
+        // reach scoring. Without them the filters are checked through SQL after the full search.
+        BookFilters filters = metadataDao.filters();
+        boolean postFiltered = filters == null && (isGiven(request.author()) || isGiven(request.language()));
+        int page = request.page();
+        int pageSize = request.pageSize();
+        SearchAfter after = request.after();
+        // a search_after cursor replaces page: the page is the pageSize hits ranked after it
+        long window = after != null ? pageSize : (long) page * pageSize;
+        if (postFiltered || (page < 1 && after == null) || pageSize < 1 || window > Integer.MAX_VALUE) return null;
+
+        // only the first page * pageSize hits can end up on this page
+        DocIdBitmap allowed = filters != null ? filters.matching(request.author(), request.language()) : null;
+        var top = engine.searchTopK(snapshot, request.q(), request.mode(), request.ranking(), (int) window, allowed,
+                after, request.fuzzy());
+        int from = after != null ? 0 : Math.min(top.docs().size(), (page - 1) * pageSize);
+        return new SearchEngine.TopDocs(top.docs().subList(from, top.docs().size()), top.totalHits(),
+                top.totalExact());
+    }
+
+    private static CachedPage fullPage(SearchEngine engine, MetadataDao metadataDao, IndexSnapshot snapshot,
+                                       SearchRequest request) {
+        BookFilters filters = metadataDao.filters();
+        String author = request.author();
+        String language = request.language();
+        DocIdBitmap allowed = filters != null ? filters.matching(author, language) : null;
+        boolean postFiltered = filters == null && (isGiven(author) || isGiven(language));
+
+        var results = engine.search(snapshot, request.q(), request.mode(), request.ranking(), allowed,
+                request.fuzzy());
+        var enriched = metadataDao.enrichAndFilter(results, postFiltered ? author : null,
+                postFiltered ? language : null);
+
+        int total = enriched.size();
+        int from = Math.max(0, (request.page() - 1) * request.pageSize());
+        if (request.after() != null) {
+            from = 0;
+            while (from < total && !request.after().admits(enriched.get(from).bookId(), enriched.get(from).score())) {
+                from++;
+            }
+        }
+        int to = Math.min(total, from + request.pageSize());
+        return new CachedPage(total, true, List.copyOf(enriched.subList(Math.min(from, to), to)));
+    }
+
+    private static boolean isGiven(String filter) {
+        return filter != null && !filter.isBlank();
+    }
+
+    // format=ndjson: one hit per line. The top-K collector must finish ranking before any hit is
+    // final; after that only the page's ranked book ids are held, and hits are enriched and written
+    // one metadata lookup batch at a time. The totals and the next page's cursor are known by then
+    // and go in headers. These pages bypass the result cache, which is no place for exports.
+    private static void streamPage(Context ctx, SearchEngine engine, MetadataDao metadataDao,
+                                   IndexSnapshot snapshot, SearchRequest request) throws IOException {
+        ctx.contentType("application/x-ndjson");
+        SearchEngine.TopDocs top = topPage(engine, metadataDao, snapshot, request);
+        if (top == null) {
+            // filters checked through SQL: the O(matches) full ranking
+            streamFullPage(ctx, engine, metadataDao, snapshot, request);
+            return;
+        }
+
+        int pageSize = request.pageSize();
+        ctx.header("X-Total-Hits", String.valueOf(top.totalHits()));
+        ctx.header("X-Total-Exact", String.valueOf(top.totalExact()));
+        if (top.docs().size() == pageSize) {
+            SearchEngine.ScoredDoc last = top.docs().get(pageSize - 1);
+            ctx.header("X-Next-Cursor", new SearchAfter(last.score, last.bookId).encode());
+        }
+
+        OutputStream out = ctx.outputStream();
+        List<SearchEngine.ScoredDoc> docs = top.docs();
+        for (int from = 0; from < docs.size(); from += MetadataDao.LOOKUP_BATCH_SIZE) {
+            List<SearchEngine.ScoredDoc> chunk = docs.subList(from,
+                    Math.min(docs.size(), from + MetadataDao.LOOKUP_BATCH_SIZE));
+            writeLines(ctx, out, metadataDao.enrichAndFilter(chunk, null, null));
+        }
+    }
+
+    // The post-filter fallback. Its memory is O(matches), not O(page): hits come out in score
+    // order, so every match is scored and the complete ranked list of book ids and scores is held
+    // before the first line is written. Only the metadata is bounded: hits are enriched and
+    // filtered one lookup batch at a time and each chunk's share of the page is written before the
+    // next is looked up. Which hits pass the filters is only known chunk by chunk, so there are no
+    // total or cursor headers; page through with page instead.
+    private static void streamFullPage(Context ctx, SearchEngine engine, MetadataDao metadataDao,
+                                       IndexSnapshot snapshot, SearchRequest request) throws IOException {
+        BookFilters filters = metadataDao.filters();
+        String author = request.author();
+        String language = request.language();
+        DocIdBitmap allowed = filters != null ? filters.matching(author, language) : null;
+        boolean postFiltered = filters == null && (isGiven(author) || isGiven(language));
+
+        var results = engine.search(snapshot, request.q(), request.mode(), request.ranking(), allowed,
+                request.fuzzy());
+
+        SearchAfter after = request.after();
+        long skip = after != null ? 0 : Math.max(0, ((long) request.page() - 1) * request.pageSize());
+        int remaining = request.pageSize();
+        OutputStream out = ctx.outputStream();
+        for (int from = 0; from < results.size() && remaining > 0; from += MetadataDao.LOOKUP_BATCH_SIZE) {
+            var hits = metadataDao.enrichAndFilter(
+                    results.subList(from, Math.min(results.size(), from + MetadataDao.LOOKUP_BATCH_SIZE)),
+                    postFiltered ? author : null, postFiltered ? language : null);
+            List<SearchHit> lines = new ArrayList<>();
+            for (SearchHit hit : hits) {
+                if (remaining <= 0) break;
+                if (after != null && !after.admits(hit.bookId(), hit.score())) continue;
+                if (skip > 0) {
+                    skip--;
+                    continue;
+                }
+                lines.add(hit);
+                remaining--;
+            }
+            writeLines(ctx, out, lines);
+        }
+    }
+
+    private static void writeLines(Context ctx, OutputStream out, List<SearchHit> hits) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (SearchHit hit : hits) lines.append(ctx.jsonMapper().toJsonString(hit, SearchHit.class)).append('\n');
+        out.write(lines.toString().getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    // Words are matched lower-cased and runs of whitespace never matter. Only the upper-case
+    // AND/OR/NOT operators must keep their case, or they would share a key with the plain words.
+    private static String normalize(String query) {
+        return QUERY_RUN.matcher(query.trim().replaceAll("\\s+", " ")).replaceAll(run -> {
+            String text = run.group();
+            return Matcher.quoteReplacement(
+                    text.equals("AND") || text.equals("OR") || text.equals("NOT") ? text : text.toLowerCase(Locale.ROOT));
+        });
+    }
+
+    // Filters match case-insensitively, and a blank filter is no filter.
+    private static String normalizeFilter(String filter) {
+        return filter == null || filter.isBlank() ? "" : filter.toLowerCase(Locale.ROOT);
+    }
+
+    record SearchRequest(String q, String mode, Ranking ranking, String author, String language, int page,
+                         int pageSize, SearchAfter after, int fuzzy) {
+
+        // Checks the parameters /search takes; the exception message is the error to report.
+        static SearchRequest of(String q, String mode, String rank, String author, String language, int page,
+                                int pageSize, String cursor, int fuzzy, Ranking defaultRanking) {
+            SearchAfter after;
+            try {
+                after = cursor == null || cursor.isBlank() ? null : SearchAfter.decode(cursor);
+            } catch (IllegalArgumentException exception) {
+                throw new IllegalArgumentException("invalid search_after cursor");
+            }
+            if (fuzzy < 0 || fuzzy > 2) throw new IllegalArgumentException("fuzzy must be 0, 1 or 2");
+            return new SearchRequest(q, mode, Ranking.parse(rank, defaultRanking), author, language, page, pageSize,
+                    after, fuzzy);
+        }
+    }
+
+    // One element of a /search/batch body: the /search parameters as JSON fields.
+    record BatchQuery(String q, String mode, String rank, String author, String language, Integer page,
+                      Integer pageSize, @SerializedName("search_after") String searchAfter, Integer fuzzy) {}
+
+    record ErrorBody(String error) {}
+
+    record CacheKey(long generation, String query, String mode, Ranking ranking, String author, String language,
+                    int page, int pageSize, SearchAfter after, int fuzzy) {}
+    record CachedPage(int total, boolean totalExact, List<SearchHit> items) {}
+
     record Health(String status, String service, String version) {}
     record Msg(String message) {}
-    record SearchResponse(String query, String mode, int page, int pageSize, int total,
-                          java.util.List<SearchEngine.ScoredDoc> items) {}
+    record SearchResponse(String query, String mode, int page, int pageSize, int total, boolean totalExact,
+                          List<SearchHit> items, String nextCursor) {}
 }
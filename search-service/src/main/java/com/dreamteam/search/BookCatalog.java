@@ -0,0 +1,125 @@
+package com.dreamteam.search;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.dreamteam.search.models.Book;
+
+// The books table held column by column: one row per book in book id order, authors and
+// languages dictionary-encoded, and a table from book id straight to row. Loaded in one scan on
+// connect and reload (the table only changes on reindex); SQLite stays the source of truth.
+public class BookCatalog {
+    // Book ids above this are looked up by binary search instead of a direct table.
+    private static final int MAX_DIRECT_ID = 1 << 22;
+
+    private final int[] bookIds;
+    private final String[] titles;
+    private final int[] authorCodes;
+    private final int[] languageCodes;
+    private final String[] authors;
+    private final String[] languages;
+    private final int[] rowById;
+    private final BookFilters filters;
+
+    private BookCatalog(int[] bookIds, String[] titles, int[] authorCodes, int[] languageCodes,
+                        String[] authors, String[] languages) {
+        this.bookIds = bookIds;
+        this.titles = titles;
+        this.authorCodes = authorCodes;
+        this.languageCodes = languageCodes;
+        this.authors = authors;
+        this.languages = languages;
+
+        int maxId = bookIds.length > 0 ? bookIds[bookIds.length - 1] : -1;
+        if (maxId < MAX_DIRECT_ID) {
+            this.rowById = new int[maxId + 1];
+            Arrays.fill(rowById, -1);
+            for (int row = 0; row < bookIds.length; row++) {
+                if (bookIds[row] >= 0) rowById[bookIds[row]] = row;
+            }
+        } else {
+            this.rowById = null;
+        }
+        this.filters = BookFilters.of(this);
+    }
+
+    public static BookCatalog load(Connection connection) throws SQLException {
+        List<String> titles = new ArrayList<>();
+        int[] bookIds = new int[1024];
+        int[] authorCodes = new int[1024];
+        int[] languageCodes = new int[1024];
+        Map<String, Integer> authors = new HashMap<>();
+        Map<String, Integer> languages = new HashMap<>();
+
+        int rows = 0;
+        try (Statement statement = connection.createStatement();
+             ResultSet results = statement.executeQuery(
+                     "SELECT book_id, title, author, language FROM books ORDER BY book_id")) {
+            while (results.next()) {
+                if (rows == bookIds.length) {
+                    bookIds = Arrays.copyOf(bookIds, rows * 2);
+                    authorCodes = Arrays.copyOf(authorCodes, rows * 2);
+                    languageCodes = Arrays.copyOf(languageCodes, rows * 2);
+                }
+                bookIds[rows] = results.getInt("book_id");
+                titles.add(results.getString("title"));
+                authorCodes[rows] = encode(results.getString("author"), authors);
+                languageCodes[rows] = encode(results.getString("language"), languages);
+                rows++;
+            }
+        }
+
+        return new BookCatalog(Arrays.copyOf(bookIds, rows), titles.toArray(new String[0]),
+                Arrays.copyOf(authorCodes, rows), Arrays.copyOf(languageCodes, rows),
+                decode(authors), decode(languages));
+    }
+
+    public int size() {
+        return bookIds.length;
+    }
+
+    public BookFilters filters() {
+        return filters;
+    }
+
+    // The book's metadata, or null if the books table has no row for it.
+    public Book get(int bookId) {
+        int row = row(bookId);
+        return row < 0 ? null : new Book(bookIds[row], titles[row], authorAt(row), languageAt(row));
+    }
+
+    int bookIdAt(int row) {
+        return bookIds[row];
+    }
+
+    String authorAt(int row) {
+        return authorCodes[row] < 0 ? null : authors[authorCodes[row]];
+    }
+
+    String languageAt(int row) {
+        return languageCodes[row] < 0 ? null : languages[languageCodes[row]];
+    }
+
+    int row(int bookId) {
+        if (rowById != null) return bookId >= 0 && bookId < rowById.length ? rowById[bookId] : -1;
+        int row = Arrays.binarySearch(bookIds, bookId);
+        return row >= 0 ? row : -1;
+    }
+
+    private static int encode(String value, Map<String, Integer> codes) {
+        return value == null ? -1 : codes.computeIfAbsent(value, key -> codes.size());
+    }
+
+    private static String[] decode(Map<String, Integer> codes) {
+        String[] values = new String[codes.size()];
+        for (Map.Entry<String, Integer> entry : codes.entrySet()) values[entry.getValue()] = entry.getKey();
+        return values;
+    }
+}
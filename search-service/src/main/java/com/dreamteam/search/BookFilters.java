@@ -0,0 +1,90 @@
+package com.dreamteam.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import com.dreamteam.search.index.DocIdBitmap;
+
+// Book id bitmaps per author and per language, built from the book catalog, so the
+// author/language filters reach the engine as a set to intersect with postings instead of
+// being checked against SQLite after scoring. Filter semantics are unchanged: case-insensitive,
+// the author filter matches a substring and the language filter a prefix.
+public class BookFilters {
+    private final DocIdBitmap all;
+    private final Map<String, DocIdBitmap> byAuthor;
+    private final Map<String, DocIdBitmap> byLanguage;
+
+    private BookFilters(DocIdBitmap all, Map<String, DocIdBitmap> byAuthor, Map<String, DocIdBitmap> byLanguage) {
+        this.all = all;
+        this.byAuthor = byAuthor;
+        this.byLanguage = byLanguage;
+    }
+
+    static BookFilters of(BookCatalog catalog) {
+        IdList all = new IdList();
+        Map<String, IdList> authors = new HashMap<>();
+        Map<String, IdList> languages = new HashMap<>();
+
+        for (int row = 0; row < catalog.size(); row++) {
+            int bookId = catalog.bookIdAt(row);
+            String author = catalog.authorAt(row);
+            String language = catalog.languageAt(row);
+
+            all.add(bookId);
+            if (author != null) authors.computeIfAbsent(author.toLowerCase(Locale.ROOT), key -> new IdList()).add(bookId);
+            if (language != null) languages.computeIfAbsent(language.toLowerCase(Locale.ROOT), key -> new IdList()).add(bookId);
+        }
+        return new BookFilters(all.toBitmap(), toBitmaps(authors), toBitmaps(languages));
+    }
+
+    public int bookCount() {
+        return all.cardinality();
+    }
+
+    // Books with metadata that match both filters; a null or blank filter matches every book.
+    public DocIdBitmap matching(String author, String language) {
+        DocIdBitmap matches = all;
+        if (author != null && !author.isBlank()) {
+            String wanted = author.toLowerCase(Locale.ROOT);
+            matches = matches.and(union(byAuthor, key -> key.contains(wanted)));
+        }
+        if (language != null && !language.isBlank()) {
+            String wanted = language.toLowerCase(Locale.ROOT);
+            matches = matches.and(union(byLanguage, key -> key.startsWith(wanted)));
+        }
+        return matches;
+    }
+
+    private static DocIdBitmap union(Map<String, DocIdBitmap> bitmaps, Predicate<String> keyMatches) {
+        List<DocIdBitmap> matching = new ArrayList<>();
+        for (Map.Entry<String, DocIdBitmap> entry : bitmaps.entrySet()) {
+            if (keyMatches.test(entry.getKey())) matching.add(entry.getValue());
+        }
+        return matching.size() == 1 ? matching.get(0) : DocIdBitmap.or(matching);
+    }
+
+    private static Map<String, DocIdBitmap> toBitmaps(Map<String, IdList> lists) {
+        Map<String, DocIdBitmap> bitmaps = new HashMap<>(lists.size() * 2);
+        for (Map.Entry<String, IdList> entry : lists.entrySet()) bitmaps.put(entry.getKey(), entry.getValue().toBitmap());
+        return bitmaps;
+    }
+
+    private static final class IdList {
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+
+        DocIdBitmap toBitmap() {
+            return DocIdBitmap.of(Arrays.copyOf(ids, size));
+        }
+    }
+}
@@ -2,59 +2,96 @@ package com.dreamteam.search;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
 import java.util.stream.Collectors;
 
 import com.dreamteam.search.models.Book;
+import com.dreamteam.search.models.SearchHit;
 
 
 public class MetadataDao implements AutoCloseable {
-    private Connection connection;
-    private String jdbcUrl;
-    private boolean isConnected;
+    // Well below SQLite's bind-variable limit (999 before 3.32), so no IN list can hit it.
+    public static final int LOOKUP_BATCH_SIZE = 500;
 
-    public MetadataDao(String jdbcUrl) {
-        this.jdbcUrl = jdbcUrl;
-        connect();
+    // Requests look up metadata concurrently, each through a connection of its own. The pool and
+    // the catalog loaded through it are published together, so a lookup sees one consistent pair.
+    // A reload builds the new pair, swaps it in and only then closes the old pool; lookups still
+    // holding a connection of the old one finish on it.
+    private record Metadata(SqliteReadPool pool, BookCatalog catalog) {
+        boolean isConnected() {
+            return pool != null;
+        }
     }
 
-    private void connect() {
+    private static final Metadata DISCONNECTED = new Metadata(null, null);
+
+    private final int poolSize;
+    private final AtomicReference<Metadata> metadata = new AtomicReference<>(DISCONNECTED);
+
+    public MetadataDao(String jdbcUrl, int poolSize) {
+        this.poolSize = poolSize;
+        metadata.set(connect(jdbcUrl));
+    }
+
+    private Metadata connect(String jdbcUrl) {
+        SqliteReadPool pool;
         try {
             String dbPath = jdbcUrl.replace("jdbc:sqlite:", "");
             if (!Files.exists(Path.of(dbPath))) {
                 System.out.println("Warning: Database file not found at " + dbPath + ". Metadata queries will return empty results.");
-                this.isConnected = false;
-                return;
+                return DISCONNECTED;
             }
 
-            this.connection = DriverManager.getConnection(jdbcUrl);
-            this.isConnected = true;
-            System.out.println("Successfully connected to database at " + dbPath);
+            pool = new SqliteReadPool(jdbcUrl, poolSize);
+            System.out.println("Successfully connected to database at " + dbPath
+                    + " (" + Math.max(1, poolSize) + " read-only connections)");
         } catch (SQLException exception) {
             System.err.println("Warning: Cannot connect to SQLite at " + jdbcUrl + ": " + exception.getMessage());
             System.err.println("Metadata queries will return empty results.");
-            this.isConnected = false;
+            return DISCONNECTED;
         }
+        return new Metadata(pool, loadCatalog(pool));
+    }
+
+    private static BookCatalog loadCatalog(SqliteReadPool pool) {
+        try (SqliteReadPool.Lease lease = pool.lease()) {
+            BookCatalog catalog = BookCatalog.load(lease.connection());
+            System.out.println("Loaded metadata and filters for " + catalog.size() + " books.");
+            return catalog;
+        } catch (SQLException exception) {
+            System.err.println("Warning: Cannot load book metadata into memory: " + exception.getMessage());
+            System.err.println("Metadata lookups and author/language filters fall back to SQL.");
+            return null;
+        }
+    }
+
+    // Bitmaps for filtering inside the engine, or null when the books table could not be read.
+    public BookFilters filters() {
+        BookCatalog catalog = metadata.get().catalog();
+        return catalog != null ? catalog.filters() : null;
     }
 
     public void reload(String jdbcUrl) {
-        close();
-        this.jdbcUrl = jdbcUrl;
-        connect();
+        Metadata previous = metadata.getAndSet(connect(jdbcUrl));
+        if (previous.isConnected()) previous.pool().close();
     }
 
     public Book getBookById(int id) {
-        if (!isConnected) return null;
-        
+        Metadata current = metadata.get();
+        if (!current.isConnected()) return null;
+        if (current.catalog() != null) return current.catalog().get(id);
+
         String sql = "SELECT book_id, title, author, language FROM books WHERE book_id = ?";
-        try (PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+        try (SqliteReadPool.Lease lease = current.pool().lease();
+             PreparedStatement preparedStatement = lease.connection().prepareStatement(sql)) {
             preparedStatement.setInt(1, id);
             try (ResultSet results = preparedStatement.executeQuery()) {
                 if (!results.next()) return null;
@@ -66,20 +103,69 @@ public class MetadataDao implements AutoCloseable {
                 );
             }
         } catch (SQLException exception) {
+            // the pool was closed by a reload in the meantime: ask the new one
+            if (metadata.get() != current) return getBookById(id);
             System.err.println("Error querying book by id: " + exception.getMessage());
             return null;
         }
     }
 
-    public List<SearchEngine.ScoredDoc> enrichAndFilter(List<SearchEngine.ScoredDoc> docs,
-                                                        String authorFilter,
-                                                        String languageFilter) {
-        if (docs.isEmpty() || !isConnected) return docs;
-        
+    // Attaches title, author and language to each hit, dropping hits without metadata and, when
+    // given, hits failing the filters. Served from the in-memory catalog when it is loaded.
+    public List<SearchHit> enrichAndFilter(List<SearchEngine.ScoredDoc> docs,
+                                           String authorFilter,
+                                           String languageFilter) {
+        if (docs.isEmpty()) return List.of();
+        Metadata current = metadata.get();
+        if (!current.isConnected()) {
+            return docs.stream().map(doc -> new SearchHit(doc.bookId, doc.score, null, null, null)).toList();
+        }
+
+        IntFunction<Book> books;
+        if (current.catalog() != null) {
+            books = current.catalog()::get;
+        } else {
+            Map<Integer, Book> byId = new HashMap<>();
+            try (SqliteReadPool.Lease lease = current.pool().lease()) {
+                for (int from = 0; from < docs.size(); from += LOOKUP_BATCH_SIZE) {
+                    lookupBooks(lease, docs.subList(from, Math.min(docs.size(), from + LOOKUP_BATCH_SIZE)), byId);
+                }
+            } catch (SQLException exception) {
+                // the pool was closed by a reload in the meantime: ask the new one
+                if (metadata.get() != current) return enrichAndFilter(docs, authorFilter, languageFilter);
+                System.err.println("Error enriching and filtering: " + exception.getMessage());
+                // unfiltered results would be wrong answers; without filters they are only unenriched
+                boolean filtered = (authorFilter != null && !authorFilter.isBlank())
+                        || (languageFilter != null && !languageFilter.isBlank());
+                return filtered ? List.of()
+                        : docs.stream().map(doc -> new SearchHit(doc.bookId, doc.score, null, null, null)).toList();
+            }
+            books = byId::get;
+        }
+
+        List<SearchHit> hits = new ArrayList<>(docs.size());
+        for (SearchEngine.ScoredDoc doc : docs) {
+            Book book = books.apply(doc.bookId);
+            if (book == null) continue;
+            boolean ok = true;
+            if (authorFilter != null && !authorFilter.isBlank()) {
+                ok &= book.author() != null &&
+                      book.author().toLowerCase().contains(authorFilter.toLowerCase());
+            }
+            if (languageFilter != null && !languageFilter.isBlank()) {
+                ok &= book.language() != null &&
+                      book.language().toLowerCase().startsWith(languageFilter.toLowerCase());
+            }
+            if (ok) hits.add(new SearchHit(doc.bookId, doc.score, book.title(), book.author(), book.language()));
+        }
+        return hits;
+    }
+
+    private void lookupBooks(SqliteReadPool.Lease lease, List<SearchEngine.ScoredDoc> docs, Map<Integer, Book> byId)
+            throws SQLException {
         String inClause = docs.stream().map(d -> "?").collect(Collectors.joining(","));
         String sql = "SELECT book_id, title, author, language FROM books WHERE book_id IN (" + inClause + ")";
-        Map<Integer, Book> byId = new HashMap<>();
-        try (PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+        try (PreparedStatement preparedStatement = lease.connection().prepareStatement(sql)) {
             int i = 1;
             for (var doc : docs) preparedStatement.setInt(i++, doc.bookId);
             try (ResultSet results = preparedStatement.executeQuery()) {
@@ -92,31 +178,11 @@ public class MetadataDao implements AutoCloseable {
                     ));
                 }
             }
-        } catch (SQLException exception) {
-            System.err.println("Error enriching and filtering: " + exception.getMessage());
-            return docs;
         }
-
-        return docs.stream()
-                .filter(doc -> {
-                    Book book = byId.get(doc.bookId);
-                    if (book == null) return false;
-                    boolean ok = true;
-                    if (authorFilter != null && !authorFilter.isBlank()) {
-                        ok &= book.author() != null &&
-                              book.author().toLowerCase().contains(authorFilter.toLowerCase());
-                    }
-                    if (languageFilter != null && !languageFilter.isBlank()) {
-                        ok &= book.language() != null &&
-                              book.language().toLowerCase().startsWith(languageFilter.toLowerCase());
-                    }
-                    return ok;
-                })
-                .map(doc -> new SearchEngine.ScoredDoc(doc.bookId, doc.score))
-                .toList();
     }
 
     @Override public void close() {
-        try { if (connection != null && isConnected) connection.close(); } catch (SQLException ignored) {}
+        Metadata current = metadata.get();
+        if (current.isConnected()) current.pool().close();
     }
 }
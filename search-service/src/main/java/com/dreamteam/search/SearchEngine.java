@@ -1,40 +1,107 @@
 package com.dreamteam.search;
 
 import java.io.IOException;
-import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicReference;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.dreamteam.search.index.DocIdBitmap;
+import com.dreamteam.search.index.IndexSnapshot;
+import com.dreamteam.search.index.PositionReader;
+import com.dreamteam.search.index.Postings;
+import com.dreamteam.search.index.SegmentIndex;
+import com.dreamteam.search.index.TermIndex;
+import com.dreamteam.search.index.TermsEnum;
+import com.dreamteam.search.query.Bm25;
+import com.dreamteam.search.query.Conjunction;
+import com.dreamteam.search.query.DocIterator;
+import com.dreamteam.search.query.Disjunction;
+import com.dreamteam.search.query.Exclusion;
+import com.dreamteam.search.query.LevenshteinAutomaton;
+import com.dreamteam.search.query.Phrase;
+import com.dreamteam.search.query.PhraseFilter;
+import com.dreamteam.search.query.PostingsCursor;
+import com.dreamteam.search.query.PostingsUnion;
+import com.dreamteam.search.query.QueryIterator;
+import com.dreamteam.search.query.QueryNode;
+import com.dreamteam.search.query.QueryParser;
+import com.dreamteam.search.query.Ranking;
+import com.dreamteam.search.query.RequiredOptional;
+import com.dreamteam.search.query.SearchAfter;
+import com.dreamteam.search.query.TermPattern;
+import com.dreamteam.search.query.TopKHeap;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 
 public class SearchEngine {
 
-    private Map<String, List<Integer>> index;
-    private Map<String, Double> idf;
-    private int N;
+    // Fuzzy words are keyed as word~distance, which no tokenized term can collide with.
+    private static final char FUZZY = '~';
 
-    public SearchEngine(Path indexPath) {
-        this.index = loadIndex(indexPath);
-        this.N = estimateDocCount(index);
-        this.idf = computeIdf(index, N);
+    // reads of the segments manifest before a reload gives up, see openSegments
+    private static final int SEGMENT_OPEN_ATTEMPTS = 3;
+
+    // Replaced as a whole on reload; a search in flight keeps the snapshot it started with,
+    // and an old snapshot is freed once the last such search drops it.
+    private final AtomicReference<IndexSnapshot> current = new AtomicReference<>();
+    private final Ranking defaultRanking;
+    private final Bm25 bm25;
+    private final int maxExpansions;
+
+    public SearchEngine(Path indexPath, Path segmentsDir) {
+        this(indexPath, segmentsDir, Ranking.IDF, new Bm25(1.2, 0.75));
+    }
+
+    public SearchEngine(Path indexPath, Path segmentsDir, Ranking defaultRanking, Bm25 bm25) {
+        this(indexPath, segmentsDir, defaultRanking, bm25, 128);
+    }
+
+    // maxExpansions caps how many dictionary terms one wildcard or fuzzy term can stand for.
+    public SearchEngine(Path indexPath, Path segmentsDir, Ranking defaultRanking, Bm25 bm25, int maxExpansions) {
+        this.defaultRanking = defaultRanking;
+        this.bm25 = bm25;
+        this.maxExpansions = maxExpansions;
+        TermIndex index;
+        try {
+            index = loadIndex(indexPath, segmentsDir, null);
+        } catch (IOException exception) {
+            // nothing is being served yet, so the JSON index is better than no index at all
+            System.err.println("Warning: " + exception.getMessage());
+            System.err.println("Falling back to " + indexPath + ".");
+            index = loadJsonIndex(indexPath);
+        }
+        current.set(new IndexSnapshot(1, index));
+    }
+
+    // If the segments cannot be opened, the current snapshot stays in service and the failure is
+    // thrown: falling back to the JSON index, usually absent in segment mode, would publish an
+    // empty index until the next reload.
+    public synchronized IndexSnapshot reload(Path indexPath, Path segmentsDir) throws IOException {
+        IndexSnapshot previous = current.get();
+        IndexSnapshot next = new IndexSnapshot(previous.generation() + 1,
+                loadIndex(indexPath, segmentsDir, previous.index()));
+        current.set(next);
+        return next;
+    }
+
+    public IndexSnapshot snapshot() {
+        return current.get();
     }
 
-    public void reload(Path indexPath) {
-        this.index = loadIndex(indexPath);
-        this.N = estimateDocCount(index);
-        this.idf = computeIdf(index, N);
+    public Ranking defaultRanking() {
+        return defaultRanking;
     }
 
     public static class ScoredDoc {
@@ -45,88 +112,576 @@ public class SearchEngine {
         }
     }
 
+    // The best hits of a query. totalHits is exact unless pruning skipped documents, in which
+    // case it only counts the documents that were looked at.
+    public record TopDocs(List<ScoredDoc> docs, int totalHits, boolean totalExact) {}
+
+    // Receives hits in book id order as they are matched and scored.
+    private interface HitCollector {
+        void collect(int bookId, double score);
+    }
+
+    // The bare words and the phrases of a query. Phrase terms score like bare words.
+    private record ParsedQuery(List<String> words, List<Phrase> phrases) {
+
+        List<String> terms() {
+            List<String> terms = new ArrayList<>(words);
+            for (Phrase phrase : phrases) terms.addAll(phrase.terms());
+            return terms;
+        }
+    }
+
     public List<ScoredDoc> search(String rawQuery, String mode) {
-        List<String> terms = tokenize(rawQuery);
+        return search(snapshot(), rawQuery, mode);
+    }
+
+    public List<ScoredDoc> search(IndexSnapshot snapshot, String rawQuery, String mode) {
+        return search(snapshot, rawQuery, mode, defaultRanking);
+    }
+
+    public List<ScoredDoc> search(IndexSnapshot snapshot, String rawQuery, String mode, Ranking ranking) {
+        return search(snapshot, rawQuery, mode, ranking, null);
+    }
+
+    // Only books in filter (when not null) can match; it is intersected with the postings
+    // before anything is scored.
+    public List<ScoredDoc> search(IndexSnapshot snapshot, String rawQuery, String mode, Ranking ranking,
+                                  DocIdBitmap filter) {
+        return search(snapshot, rawQuery, mode, ranking, filter, 0);
+    }
+
+    // With fuzzy > 0 every bare word also matches dictionary terms up to that many edits away
+    // (see fuzzyDistance), weighted down by distance.
+    public List<ScoredDoc> search(IndexSnapshot snapshot, String rawQuery, String mode, Ranking ranking,
+                                  DocIdBitmap filter, int fuzzy) {
+        QueryParser parser = new QueryParser(rawQuery);
+        if (parser.hasOperators()) {
+            List<ScoredDoc> scored = new ArrayList<>();
+            QueryIterator plan = plan(snapshot, parser, mode, ranking, filter, fuzzy);
+            if (plan != null) collect(plan, (doc, score) -> scored.add(new ScoredDoc(doc, score)));
+            scored.sort(TopKHeap.RANKING);
+            return scored;
+        }
+
+        ParsedQuery query = parse(parser, fuzzy);
+        List<String> terms = query.terms();
         if (terms.isEmpty()) return List.of();
 
-        Set<Integer> candidateDocs;
-        if ("or".equalsIgnoreCase(mode)) {
-            candidateDocs = new HashSet<>();
-            for (String t : terms) candidateDocs.addAll(index.getOrDefault(t, List.of()));
+        Map<String, PostingsCursor> byTerm = cursors(snapshot, terms, ranking);
+        List<PostingsCursor> cursors = new ArrayList<>(byTerm.values());
+
+        List<ScoredDoc> scored = new ArrayList<>();
+        HitCollector collector = (doc, score) -> scored.add(new ScoredDoc(doc, score));
+        if (!query.phrases().isEmpty()) {
+            positional(snapshot, query, mode, byTerm, filter, collector);
+        } else if ("or".equalsIgnoreCase(mode)) {
+            union(cursors, filter, collector);
+        } else {
+            intersection(cursors, required(cursors, filter), null, collector);
+        }
+
+        scored.sort(TopKHeap.RANKING);
+        return scored;
+    }
+
+    // Same ranking as search(), but only the best k hits are kept. OR queries use MaxScore
+    // pruning, so documents that cannot reach the top k are never fully scored.
+    public TopDocs searchTopK(IndexSnapshot snapshot, String rawQuery, String mode, Ranking ranking, int k) {
+        return searchTopK(snapshot, rawQuery, mode, ranking, k, null);
+    }
+
+    public TopDocs searchTopK(IndexSnapshot snapshot, String rawQuery, String mode, Ranking ranking, int k,
+                              DocIdBitmap filter) {
+        return searchTopK(snapshot, rawQuery, mode, ranking, k, filter, null);
+    }
+
+    // With after set, returns the k best hits that rank after it: the page following the one
+    // that ended there. totalHits still counts the hits on both sides of it.
+    public TopDocs searchTopK(IndexSnapshot snapshot, String rawQuery, String mode, Ranking ranking, int k,
+                              DocIdBitmap filter, SearchAfter after) {
+        return searchTopK(snapshot, rawQuery, mode, ranking, k, filter, after, 0);
+    }
+
+    public TopDocs searchTopK(IndexSnapshot snapshot, String rawQuery, String mode, Ranking ranking, int k,
+                              DocIdBitmap filter, SearchAfter after, int fuzzy) {
+        if (k <= 0) return new TopDocs(List.of(), 0, true);
+        QueryParser parser = new QueryParser(rawQuery);
+        if (parser.hasOperators()) {
+            TopKHeap heap = new TopKHeap(k, after);
+            QueryIterator plan = plan(snapshot, parser, mode, ranking, filter, fuzzy);
+            int matches = plan == null ? 0 : collect(plan, heap::offer);
+            return new TopDocs(heap.sorted(), matches, true);
+        }
+
+        ParsedQuery query = parse(parser, fuzzy);
+        List<String> terms = query.terms();
+        if (terms.isEmpty()) return new TopDocs(List.of(), 0, true);
+
+        Map<String, PostingsCursor> byTerm = cursors(snapshot, terms, ranking);
+        List<PostingsCursor> cursors = new ArrayList<>(byTerm.values());
+        TopKHeap heap = new TopKHeap(k, after);
+
+        int matches;
+        if (!query.phrases().isEmpty()) {
+            matches = positional(snapshot, query, mode, byTerm, filter, heap::offer);
+        } else if ("or".equalsIgnoreCase(mode)) {
+            return unionTopK(cursors, heap, filter);
         } else {
-            candidateDocs = null;
-            for (String term : terms) {
-                List<Integer> postings = index.getOrDefault(term, List.of());
-                if (candidateDocs == null) candidateDocs = new HashSet<>(postings);
-                else candidateDocs.retainAll(postings);
-                if (candidateDocs.isEmpty()) break;
+            matches = intersection(cursors, required(cursors, filter), null, heap::offer);
+        }
+        return new TopDocs(heap.sorted(), matches, true);
+    }
+
+    // One cursor per distinct term; a term repeated in the query weighs once per occurrence.
+    private Map<String, PostingsCursor> cursors(IndexSnapshot snapshot, List<String> terms, Ranking ranking) {
+        Map<String, Integer> occurrences = new LinkedHashMap<>();
+        for (String term : terms) occurrences.merge(term, 1, Integer::sum);
+
+        List<Map.Entry<String, PostingsCursor>> cursors = new ArrayList<>(occurrences.size());
+        for (Map.Entry<String, Integer> entry : occurrences.entrySet()) {
+            Postings postings = postings(snapshot.index(), entry.getKey());
+            cursors.add(Map.entry(entry.getKey(), cursor(snapshot, postings, ranking, entry.getValue())));
+        }
+        // scores are always summed in this order, so every evaluation path ranks ties alike
+        cursors.sort(Comparator.comparingDouble(entry -> entry.getValue().maxScore()));
+
+        Map<String, PostingsCursor> ordered = new LinkedHashMap<>();
+        for (Map.Entry<String, PostingsCursor> entry : cursors) ordered.put(entry.getKey(), entry.getValue());
+        return ordered;
+    }
+
+    // Scores a term's postings with the given ranking, weighted by how often the term occurs.
+    private PostingsCursor cursor(IndexSnapshot snapshot, Postings postings, Ranking ranking, int occurrences) {
+        TermIndex index = snapshot.index();
+        if (ranking == Ranking.BM25) {
+            double averageDocLength = index.averageDocLength();
+            double idf = snapshot.bm25Idf(postings.docFreq()) * occurrences;
+            double maxScore = idf * bm25.tf(postings.maxFreq(), index.minDocLength(), averageDocLength);
+            return new PostingsCursor(postings,
+                    (doc, freq) -> idf * bm25.tf(freq, index.docLength(doc), averageDocLength), maxScore);
+        }
+        double weight = snapshot.idf(postings.docFreq()) * occurrences;
+        return new PostingsCursor(postings, (doc, freq) -> weight, weight);
+    }
+
+    // Compiles a query with operators into iterators: conjunctions for required clauses,
+    // disjunctions for alternatives and sorted-list differences for exclusions. Every leaf gets
+    // its own cursor, but a term's postings are looked up once. Returns null if the query can
+    // match nothing.
+    private QueryIterator plan(IndexSnapshot snapshot, QueryParser parser, String mode, Ranking ranking,
+                               DocIdBitmap filter, int fuzzy) {
+        QueryNode root = parser.parse(!"or".equalsIgnoreCase(mode));
+        QueryIterator plan = root == null ? null : compile(snapshot, root, ranking, fuzzy, new HashMap<>());
+        if (plan == null || filter == null) return plan;
+        return new Conjunction(List.of(plan), List.of(filter.cursor()), null);
+    }
+
+    private QueryIterator compile(IndexSnapshot snapshot, QueryNode node, Ranking ranking, int fuzzy,
+                                  Map<String, Postings> postingsByKey) {
+        if (node instanceof QueryNode.Term term) {
+            String key = fuzzyKey(term.word(), fuzzy);
+            Postings postings = postingsByKey.computeIfAbsent(key, k -> postings(snapshot.index(), k));
+            return cursor(snapshot, postings, ranking, 1);
+        }
+
+        if (node instanceof QueryNode.PhraseMatch match) {
+            Phrase phrase = match.phrase();
+            List<PostingsCursor> cursors = new ArrayList<>(phrase.terms().size());
+            for (String term : phrase.terms()) {
+                Postings postings = postingsByKey.computeIfAbsent(term, k -> postings(snapshot.index(), k));
+                cursors.add(cursor(snapshot, postings, ranking, 1));
             }
-            if (candidateDocs == null) candidateDocs = Set.of();
+            return new Conjunction(cursors, List.of(), PhraseFilter.create(snapshot.index(), List.of(phrase)));
         }
 
-        List<ScoredDoc> scored = new ArrayList<>();
-        for (int docId : candidateDocs) {
-            double s = 0.0;
-            for (String term : terms) {
-                List<Integer> postings = index.get(term);
-                if (postings != null && postings.contains(docId)) {
-                    s += idf.getOrDefault(term, 0.0);
+        QueryNode.Bool bool = (QueryNode.Bool) node;
+        List<QueryIterator> must = new ArrayList<>();
+        for (QueryNode clause : bool.must()) {
+            QueryIterator iterator = compile(snapshot, clause, ranking, fuzzy, postingsByKey);
+            if (iterator == null) return null;
+            must.add(iterator);
+        }
+        List<QueryIterator> should = compileAll(snapshot, bool.should(), ranking, fuzzy, postingsByKey);
+        List<QueryIterator> mustNot = compileAll(snapshot, bool.mustNot(), ranking, fuzzy, postingsByKey);
+
+        QueryIterator positive;
+        if (!must.isEmpty()) {
+            positive = must.size() == 1 ? must.get(0) : new Conjunction(must, List.of(), null);
+            if (!should.isEmpty()) positive = new RequiredOptional(positive, should);
+        } else if (!should.isEmpty()) {
+            positive = should.size() == 1 ? should.get(0) : new Disjunction(should);
+        } else {
+            return null;
+        }
+        if (mustNot.isEmpty()) return positive;
+        return new Exclusion(positive, mustNot.size() == 1 ? mustNot.get(0) : new Disjunction(mustNot));
+    }
+
+    // The clauses that can match anything.
+    private List<QueryIterator> compileAll(IndexSnapshot snapshot, List<QueryNode> clauses, Ranking ranking,
+                                           int fuzzy, Map<String, Postings> postingsByKey) {
+        List<QueryIterator> iterators = new ArrayList<>(clauses.size());
+        for (QueryNode clause : clauses) {
+            QueryIterator iterator = compile(snapshot, clause, ranking, fuzzy, postingsByKey);
+            if (iterator != null) iterators.add(iterator);
+        }
+        return iterators;
+    }
+
+    // Returns the number of matches.
+    private static int collect(QueryIterator plan, HitCollector collector) {
+        int matches = 0;
+        for (int doc = plan.doc(); doc != DocIterator.NO_MORE_DOCS; doc = plan.next()) {
+            collector.collect(doc, plan.score());
+            matches++;
+        }
+        return matches;
+    }
+
+    private static List<DocIterator> required(List<PostingsCursor> cursors, DocIdBitmap filter) {
+        List<DocIterator> required = new ArrayList<>(cursors);
+        if (filter != null) required.add(filter.cursor());
+        return required;
+    }
+
+    // Docs matching any term, found by stepping all cursors through the smallest current doc.
+    // Docs outside the filter are stepped over without being scored.
+    private static void union(List<PostingsCursor> cursors, DocIdBitmap filter, HitCollector collector) {
+        while (true) {
+            int doc = DocIterator.NO_MORE_DOCS;
+            for (PostingsCursor cursor : cursors) doc = Math.min(doc, cursor.doc());
+            if (doc == DocIterator.NO_MORE_DOCS) break;
+
+            boolean allowed = filter == null || filter.contains(doc);
+            double score = 0.0;
+            for (PostingsCursor cursor : cursors) {
+                if (cursor.doc() == doc) {
+                    if (allowed) score += cursor.score();
+                    cursor.next();
                 }
             }
-            scored.add(new ScoredDoc(docId, s));
+            if (allowed) collector.collect(doc, score);
         }
+    }
+
+    // MaxScore: cursors are ordered by the most they can add to a score. The lowest ones whose
+    // bounds together cannot beat the current k-th best hit are non-essential; candidates come
+    // only from the essential cursors, and a non-essential cursor is only advanced while the
+    // candidate could still make the top k.
+    private static TopDocs unionTopK(List<PostingsCursor> cursors, TopKHeap heap, DocIdBitmap filter) {
+        int n = cursors.size();
+        double[] prefixBound = new double[n + 1];
+        for (int i = 0; i < n; i++) prefixBound[i + 1] = prefixBound[i] + cursors.get(i).maxScore();
 
-        return scored.stream()
-                .sorted(Comparator.comparingDouble((ScoredDoc doc) -> doc.score).reversed()
-                        .thenComparingInt(doc -> doc.bookId))
-                .collect(Collectors.toList());
+        boolean[] matched = new boolean[n];
+        double[] scores = new double[n];
+        int firstEssential = 0;
+        int visited = 0;
+
+        while (firstEssential < n) {
+            int doc = DocIterator.NO_MORE_DOCS;
+            for (int i = firstEssential; i < n; i++) doc = Math.min(doc, cursors.get(i).doc());
+            if (doc == DocIterator.NO_MORE_DOCS) break;
+
+            if (filter != null && !filter.contains(doc)) {
+                for (int i = firstEssential; i < n; i++) {
+                    if (cursors.get(i).doc() == doc) cursors.get(i).next();
+                }
+                continue;
+            }
+            visited++;
+
+            double partial = 0.0;
+            for (int i = firstEssential; i < n; i++) {
+                PostingsCursor cursor = cursors.get(i);
+                matched[i] = cursor.doc() == doc;
+                if (matched[i]) {
+                    scores[i] = cursor.score();
+                    partial += scores[i];
+                    cursor.next();
+                }
+            }
+
+            boolean competitive = true;
+            for (int i = firstEssential - 1; i >= 0; i--) {
+                if (partial + prefixBound[i + 1] < heap.threshold()) {
+                    competitive = false;
+                    break;
+                }
+                matched[i] = cursors.get(i).advance(doc) == doc;
+                if (matched[i]) {
+                    scores[i] = cursors.get(i).score();
+                    partial += scores[i];
+                }
+            }
+
+            if (competitive) {
+                double score = 0.0;
+                for (int i = 0; i < n; i++) {
+                    if (matched[i]) score += scores[i];
+                }
+                heap.offer(doc, score);
+            }
+            Arrays.fill(matched, false);
+
+            while (firstEssential < n && prefixBound[firstEssential + 1] < heap.threshold()) {
+                firstEssential++;
+            }
+        }
+
+        return new TopDocs(heap.sorted(), visited, firstEssential == 0);
+    }
+
+    // A wildcard or fuzzy term stands for all its dictionary expansions at once: their postings
+    // are merged into one list and scored as a single term. A fuzzy expansion n edits away from
+    // a word of length m counts 1 - n/(m+1) of an exact match; a book containing several
+    // expansions gets the weight of the closest.
+    private Postings postings(TermIndex index, String term) {
+        int fuzzy = term.indexOf(FUZZY);
+        if (fuzzy >= 0) {
+            String word = term.substring(0, fuzzy);
+            int maxEdits = Integer.parseInt(term.substring(fuzzy + 1));
+            List<LevenshteinAutomaton.Expansion> matches =
+                    new LevenshteinAutomaton(word, maxEdits).expand(index.terms(), maxExpansions);
+
+            List<Postings> expansions = new ArrayList<>(matches.size());
+            float[] weights = new float[matches.size()];
+            for (int i = 0; i < matches.size(); i++) {
+                expansions.add(index.postings(matches.get(i).term()));
+                weights[i] = 1f - (float) matches.get(i).distance() / (word.length() + 1);
+            }
+            return PostingsUnion.merge(expansions, weights);
+        }
+        if (!TermPattern.isPattern(term)) return index.postings(term);
+
+        List<Postings> expansions = new ArrayList<>();
+        for (String expansion : TermPattern.compile(term).expand(index.terms(), maxExpansions)) {
+            expansions.add(index.postings(expansion));
+        }
+        return PostingsUnion.merge(expansions);
     }
 
-    private static List<String> tokenize(String q) {
-        return Arrays.stream(q.toLowerCase(Locale.ROOT).split("\\W+"))
-                .filter(s -> !s.isBlank()).toList();
+    // Edits allowed for a word of this length: none up to 2 characters and at most one up to 5,
+    // where a second edit already matches a large share of the dictionary.
+    private static int fuzzyDistance(String word, int fuzzy) {
+        if (word.length() <= 2) return 0;
+        return word.length() <= 5 ? Math.min(fuzzy, 1) : fuzzy;
     }
 
-    private static Map<String, List<Integer>> loadIndex(Path path) {
-        try {
-            if (!Files.exists(path)) {
-                System.out.println("Warning: Index file not found at " + path + ". Starting with empty index.");
-                return new HashMap<>();
+    // Phrases must match whatever the mode; bare words are required only in AND mode and otherwise
+    // just add their score. Positions are decoded only for books that contain every required term.
+    private static int positional(IndexSnapshot snapshot, ParsedQuery query, String mode,
+                                  Map<String, PostingsCursor> byTerm, DocIdBitmap filter, HitCollector collector) {
+        Set<String> required = new LinkedHashSet<>();
+        if (!"or".equalsIgnoreCase(mode)) required.addAll(query.words());
+        for (Phrase phrase : query.phrases()) required.addAll(phrase.terms());
+
+        List<DocIterator> requiredCursors = new ArrayList<>(required.size() + 1);
+        for (String term : required) requiredCursors.add(byTerm.get(term));
+        if (filter != null) requiredCursors.add(filter.cursor());
+
+        return intersection(new ArrayList<>(byTerm.values()), requiredCursors,
+                PhraseFilter.create(snapshot.index(), query.phrases()), collector);
+    }
+
+    // Docs matching every required iterator (and the phrases, if any); the remaining cursors only
+    // add their score. The cheapest required iterator leads and proposes candidates; the others
+    // gallop to each candidate, and any mismatch makes the lead jump past it. Pairing a rare word
+    // with a frequent one therefore costs about as much as the rare word alone, and a selective
+    // filter leads the terms just like a rare word would.
+    // Returns the number of matches.
+    private static int intersection(List<PostingsCursor> cursors, List<DocIterator> required,
+                                    PhraseFilter phrases, HitCollector collector) {
+        List<DocIterator> byCost = new ArrayList<>(required);
+        byCost.sort(Comparator.comparingInt(DocIterator::cost));
+
+        int matches = 0;
+        if (byCost.get(0).cost() == 0) return matches;
+
+        DocIterator lead = byCost.get(0);
+        int candidate = lead.doc();
+        while (candidate != DocIterator.NO_MORE_DOCS) {
+            int next = candidate;
+            for (int i = 1; i < byCost.size(); i++) {
+                next = byCost.get(i).advance(candidate);
+                if (next != candidate) break;
+            }
+
+            if (next == candidate) {
+                if (phrases == null || phrases.accepts(candidate)) {
+                    double score = 0.0;
+                    for (PostingsCursor cursor : cursors) {
+                        if (cursor.advance(candidate) == candidate) score += cursor.score();
+                    }
+                    collector.collect(candidate, score);
+                    matches++;
+                }
+                candidate = lead.next();
+            } else {
+                candidate = lead.advance(next);
             }
+        }
+        return matches;
+    }
 
-            String json = Files.readString(path);
-            Type type = new TypeToken<Map<String, List<Integer>>>(){}.getType();
-            Map<String, List<Integer>> map = new Gson().fromJson(json, type);
-            
-            if (map == null) {
+    private static ParsedQuery parse(QueryParser parser, int fuzzy) {
+        List<String> words = parser.words();
+        words.replaceAll(word -> fuzzyKey(word, fuzzy));
+        return new ParsedQuery(words, parser.phrases());
+    }
+
+    // The key a bare word is looked up by: word~distance when it is matched fuzzily.
+    private static String fuzzyKey(String word, int fuzzy) {
+        int distance = fuzzyDistance(word, fuzzy);
+        return distance > 0 && !TermPattern.isPattern(word) ? word + FUZZY + distance : word;
+    }
+
+    private static TermIndex loadIndex(Path path, Path segmentsDir, TermIndex previous) throws IOException {
+        long started = System.nanoTime();
+        if (segmentsDir != null && SegmentIndex.exists(segmentsDir)) {
+            SegmentIndex segments = openSegments(segmentsDir,
+                    previous instanceof SegmentIndex ? (SegmentIndex) previous : null);
+            System.out.println("Successfully opened " + segments.segmentCount() + " segments from " + segmentsDir
+                    + " with " + segments.termCount() + " dictionary terms in "
+                    + (System.nanoTime() - started) / 1_000_000 + " ms.");
+            return segments;
+        }
+        return loadJsonIndex(path);
+    }
+
+    // A merge can delete segments between reading the manifest and opening them. It swaps the
+    // manifest first, so reading the manifest again finds the merged segment instead.
+    private static SegmentIndex openSegments(Path segmentsDir, SegmentIndex previous) throws IOException {
+        IOException failure = null;
+        for (int attempt = 0; attempt < SEGMENT_OPEN_ATTEMPTS; attempt++) {
+            try {
+                return SegmentIndex.open(segmentsDir, previous);
+            } catch (IOException exception) {
+                failure = exception;
+            }
+        }
+        throw new IOException("Failed to open segments at " + segmentsDir + " (" + SEGMENT_OPEN_ATTEMPTS
+                + " attempts): " + failure, failure);
+    }
+
+    // Streams the legacy JSON index straight into sorted int[] postings; neither the file text
+    // nor boxed lists of it are ever held in memory.
+    private static MapTermIndex loadJsonIndex(Path path) {
+        Map<String, Postings> map = new HashMap<>();
+        BitSet docs = new BitSet();
+
+        if (!Files.exists(path)) {
+            System.out.println("Warning: Index file not found at " + path + ". Starting with empty index.");
+            return new MapTermIndex(map, 0);
+        }
+
+        try (JsonReader reader = new JsonReader(Files.newBufferedReader(path, StandardCharsets.UTF_8))) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
                 System.out.println("Warning: Index file is empty or invalid at " + path + ". Starting with empty index.");
-                return new HashMap<>();
+                return new MapTermIndex(map, 0);
             }
-            
-            map.replaceAll((k, v) -> v.stream().distinct().collect(Collectors.toList()));
 
-            System.out.println("Successfully loaded index from " + path + " with " + map.size() + " terms.");
-            return map;
-        } catch (IOException exception) {
+            int[] buffer = new int[1024];
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String term = reader.nextName();
+                int size = 0;
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (size == buffer.length) buffer = Arrays.copyOf(buffer, size * 2);
+                    buffer[size++] = reader.nextInt();
+                }
+                reader.endArray();
+
+                int[] ids = Arrays.stream(buffer, 0, size).sorted().distinct().toArray();
+                int[] freqs = new int[ids.length];
+                Arrays.fill(freqs, 1);
+                map.put(term, new Postings(ids, freqs));
+                for (int id : ids) docs.set(id);
+            }
+            reader.endObject();
+        } catch (IOException | RuntimeException exception) {
             System.err.println("Warning: Failed to load inverted index at " + path + ": " + exception.getMessage());
             System.err.println("Starting with empty index.");
-            return new HashMap<>();
+            return new MapTermIndex(new HashMap<>(), 0);
         }
-    }
 
-    private static int estimateDocCount(Map<String, List<Integer>> idx) {
-        Set<Integer> docs = new HashSet<>();
-        for (var v : idx.values()) docs.addAll(v);
-        return docs.size();
+        System.out.println("Successfully loaded index from " + path + " with " + map.size() + " terms.");
+        return new MapTermIndex(map, docs.cardinality());
     }
 
-    private static Map<String, Double> computeIdf(Map<String, List<Integer>> idx, int N) {
-        Map<String, Double> map = new HashMap<>();
-        for (var e : idx.entrySet()) {
-            int df = new HashSet<>(e.getValue()).size();
-            double idf = Math.log((N + 1.0) / (df + 1.0)) + 1.0;
-            map.put(e.getKey(), idf);
+    private static class MapTermIndex implements TermIndex {
+        private final Map<String, Postings> map;
+        private final String[] sortedTerms;
+        private final int docCount;
+
+        // The JSON index has neither term frequencies nor book lengths: every posting counts
+        // once and BM25 sees every book at the average length.
+        MapTermIndex(Map<String, Postings> map, int docCount) {
+            this.map = map;
+            this.sortedTerms = map.keySet().toArray(new String[0]);
+            Arrays.sort(sortedTerms);
+            this.docCount = docCount;
+        }
+
+        @Override
+        public TermsEnum terms() {
+            return new TermsEnum() {
+                private int index = sortedTerms.length;
+
+                @Override
+                public boolean seekCeil(String target) {
+                    int found = Arrays.binarySearch(sortedTerms, target);
+                    index = found >= 0 ? found : -found - 1;
+                    return index < sortedTerms.length;
+                }
+
+                @Override
+                public boolean next() {
+                    if (index < sortedTerms.length) index++;
+                    return index < sortedTerms.length;
+                }
+
+                @Override
+                public String term() {
+                    return index < sortedTerms.length ? sortedTerms[index] : null;
+                }
+            };
+        }
+
+        @Override
+        public Postings postings(String term) {
+            return map.getOrDefault(term, Postings.EMPTY);
+        }
+
+        @Override
+        public PositionReader positions(String term) {
+            return null;
+        }
+
+        @Override
+        public int docCount() {
+            return docCount;
+        }
+
+        @Override
+        public int termCount() {
+            return map.size();
+        }
+
+        @Override
+        public int docLength(int bookId) {
+            return 0;
+        }
+
+        @Override
+        public double averageDocLength() {
+            return 0;
+        }
+
+        @Override
+        public int minDocLength() {
+            return 0;
         }
-        return map;
     }
 }
@@ -0,0 +1,86 @@
+package com.dreamteam.search;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.sqlite.SQLiteConfig;
+
+// A fixed set of read-only SQLite connections. A connection serves one thread at a time, so every
+// lookup leases one for its duration and lookups past the pool size wait for one to come back.
+// Read-only connections to the same file read in parallel and can never write to it.
+final class SqliteReadPool implements AutoCloseable {
+    private final BlockingQueue<Connection> idle;
+    private volatile boolean closed;
+
+    SqliteReadPool(String jdbcUrl, int size) throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        Properties properties = config.toProperties();
+
+        int connections = Math.max(1, size);
+        this.idle = new ArrayBlockingQueue<>(connections);
+        List<Connection> opened = new ArrayList<>(connections);
+        try {
+            for (int i = 0; i < connections; i++) opened.add(DriverManager.getConnection(jdbcUrl, properties));
+        } catch (SQLException exception) {
+            for (Connection connection : opened) closeQuietly(connection);
+            throw exception;
+        }
+        idle.addAll(opened);
+    }
+
+    final class Lease implements AutoCloseable {
+        private final Connection connection;
+
+        private Lease(Connection connection) {
+            this.connection = connection;
+        }
+
+        Connection connection() {
+            return connection;
+        }
+
+        @Override public void close() {
+            giveBack(connection);
+        }
+    }
+
+    // Waits for an idle connection. Fails once the pool is closed, so a lookup racing a reload
+    // does not wait forever on connections that will never come back.
+    Lease lease() throws SQLException {
+        try {
+            while (true) {
+                Connection connection = idle.poll(100, TimeUnit.MILLISECONDS);
+                if (connection != null) return new Lease(connection);
+                if (closed) throw new SQLException("connection pool is closed");
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("interrupted while waiting for a connection", exception);
+        }
+    }
+
+    private void giveBack(Connection connection) {
+        idle.offer(connection);
+        // returned after close() drained the pool: nobody else will close it
+        if (closed && idle.remove(connection)) closeQuietly(connection);
+    }
+
+    // Closes the idle connections now and leased ones as they come back.
+    @Override public void close() {
+        closed = true;
+        Connection connection;
+        while ((connection = idle.poll()) != null) closeQuietly(connection);
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try { connection.close(); } catch (SQLException ignored) {}
+    }
+}
@@ -0,0 +1,231 @@
+package com.dreamteam.search.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+
+import com.dreamteam.search.query.DocIterator;
+
+/*
+ * Immutable compressed set of book ids in the roaring layout: ids are split by their high 16
+ * bits into containers, and each container keeps its low 16 bits either as a sorted char[]
+ * (up to ARRAY_LIMIT values) or as a 65536-bit long[] bitmap, whichever is smaller. Lookups
+ * binary-search the container keys; unions and intersections work container by container.
+ */
+public final class DocIdBitmap {
+    public static final DocIdBitmap EMPTY = new DocIdBitmap(new char[0], new char[0][], new long[0][], 0);
+
+    private static final int ARRAY_LIMIT = 4096;
+    private static final int WORDS = 1024;
+
+    private final char[] keys;
+    private final char[][] arrays;
+    private final long[][] bitmaps;
+    private final int cardinality;
+
+    private DocIdBitmap(char[] keys, char[][] arrays, long[][] bitmaps, int cardinality) {
+        this.keys = keys;
+        this.arrays = arrays;
+        this.bitmaps = bitmaps;
+        this.cardinality = cardinality;
+    }
+
+    // docIds may be unsorted and contain duplicates; negative ids are ignored.
+    public static DocIdBitmap of(int[] docIds) {
+        int[] sorted = Arrays.stream(docIds).filter(id -> id >= 0).sorted().distinct().toArray();
+
+        List<Character> keys = new ArrayList<>();
+        List<char[]> arrays = new ArrayList<>();
+        List<long[]> bitmaps = new ArrayList<>();
+        for (int start = 0, end; start < sorted.length; start = end) {
+            char key = (char) (sorted[start] >>> 16);
+            end = start;
+            while (end < sorted.length && (sorted[end] >>> 16) == key) end++;
+
+            keys.add(key);
+            if (end - start <= ARRAY_LIMIT) {
+                char[] values = new char[end - start];
+                for (int i = start; i < end; i++) values[i - start] = (char) sorted[i];
+                arrays.add(values);
+                bitmaps.add(null);
+            } else {
+                long[] words = new long[WORDS];
+                for (int i = start; i < end; i++) words[(sorted[i] & 0xFFFF) >>> 6] |= 1L << sorted[i];
+                arrays.add(null);
+                bitmaps.add(words);
+            }
+        }
+        return new DocIdBitmap(toKeys(keys), arrays.toArray(new char[0][]), bitmaps.toArray(new long[0][]),
+                sorted.length);
+    }
+
+    public static DocIdBitmap or(Collection<DocIdBitmap> bitmaps) {
+        TreeMap<Character, long[]> words = new TreeMap<>();
+        for (DocIdBitmap bitmap : bitmaps) {
+            for (int c = 0; c < bitmap.keys.length; c++) {
+                long[] target = words.computeIfAbsent(bitmap.keys[c], key -> new long[WORDS]);
+                bitmap.orInto(c, target);
+            }
+        }
+        return fromWords(words);
+    }
+
+    public DocIdBitmap and(DocIdBitmap other) {
+        TreeMap<Character, long[]> words = new TreeMap<>();
+        int i = 0;
+        int j = 0;
+        while (i < keys.length && j < other.keys.length) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                long[] left = new long[WORDS];
+                long[] right = new long[WORDS];
+                orInto(i, left);
+                other.orInto(j, right);
+                for (int w = 0; w < WORDS; w++) left[w] &= right[w];
+                words.put(keys[i], left);
+                i++;
+                j++;
+            }
+        }
+        return fromWords(words);
+    }
+
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public boolean contains(int docId) {
+        if (docId < 0) return false;
+        int c = Arrays.binarySearch(keys, (char) (docId >>> 16));
+        if (c < 0) return false;
+        char low = (char) docId;
+        return arrays[c] != null
+                ? Arrays.binarySearch(arrays[c], low) >= 0
+                : (bitmaps[c][low >>> 6] & (1L << low)) != 0;
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    private void orInto(int container, long[] target) {
+        if (arrays[container] != null) {
+            for (char low : arrays[container]) target[low >>> 6] |= 1L << low;
+        } else {
+            for (int w = 0; w < WORDS; w++) target[w] |= bitmaps[container][w];
+        }
+    }
+
+    private static DocIdBitmap fromWords(TreeMap<Character, long[]> words) {
+        List<Character> keys = new ArrayList<>(words.size());
+        List<char[]> arrays = new ArrayList<>(words.size());
+        List<long[]> bitmaps = new ArrayList<>(words.size());
+        int cardinality = 0;
+
+        for (var entry : words.entrySet()) {
+            long[] container = entry.getValue();
+            int count = 0;
+            for (long word : container) count += Long.bitCount(word);
+            if (count == 0) continue;
+
+            keys.add(entry.getKey());
+            if (count <= ARRAY_LIMIT) {
+                char[] values = new char[count];
+                int size = 0;
+                for (int w = 0; w < WORDS; w++) {
+                    for (long word = container[w]; word != 0; word &= word - 1) {
+                        values[size++] = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+                    }
+                }
+                arrays.add(values);
+                bitmaps.add(null);
+            } else {
+                arrays.add(null);
+                bitmaps.add(container);
+            }
+            cardinality += count;
+        }
+
+        return new DocIdBitmap(toKeys(keys), arrays.toArray(new char[0][]), bitmaps.toArray(new long[0][]), cardinality);
+    }
+
+    private static char[] toKeys(List<Character> keys) {
+        char[] array = new char[keys.size()];
+        for (int i = 0; i < array.length; i++) array[i] = keys.get(i);
+        return array;
+    }
+
+    // Walks the set in ascending order; advance() skips whole containers by key.
+    public final class Cursor implements DocIterator {
+        private int container;
+        private int low = -1;
+        private int doc = -1;
+
+        private Cursor() {
+            seek(0, 0);
+        }
+
+        @Override
+        public int doc() {
+            return doc;
+        }
+
+        @Override
+        public int next() {
+            return doc == NO_MORE_DOCS ? doc : seek(container, low + 1);
+        }
+
+        @Override
+        public int advance(int target) {
+            if (doc >= target) return doc;
+            int c = container;
+            while (c < keys.length && keys[c] < (target >>> 16)) c++;
+            if (c < keys.length && keys[c] == (target >>> 16)) return seek(c, target & 0xFFFF);
+            return seek(c, 0);
+        }
+
+        @Override
+        public int cost() {
+            return cardinality;
+        }
+
+        // Positions on the first value >= fromLow in container c, or in a later container.
+        private int seek(int c, int fromLow) {
+            for (; c < keys.length; c++, fromLow = 0) {
+                int found = arrays[c] != null ? ceilInArray(arrays[c], fromLow) : ceilInBitmap(bitmaps[c], fromLow);
+                if (found >= 0) {
+                    container = c;
+                    low = found;
+                    doc = (keys[c] << 16) | found;
+                    return doc;
+                }
+            }
+            container = keys.length;
+            doc = NO_MORE_DOCS;
+            return doc;
+        }
+
+        private int ceilInArray(char[] values, int fromLow) {
+            if (fromLow > 0xFFFF) return -1;
+            int index = Arrays.binarySearch(values, (char) fromLow);
+            if (index < 0) index = -index - 1;
+            return index < values.length ? values[index] : -1;
+        }
+
+        private int ceilInBitmap(long[] words, int fromLow) {
+            int w = fromLow >>> 6;
+            if (w >= WORDS) return -1;
+            long word = words[w] & (-1L << fromLow);
+            while (word == 0) {
+                if (++w == WORDS) return -1;
+                word = words[w];
+            }
+            return (w << 6) + Long.numberOfTrailingZeros(word);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.dreamteam.search.index;
+
+import com.dreamteam.search.query.Bm25;
+
+// An immutable view of the index as one reload produced it. Searches take the current
+// snapshot once and use only it, so document counts and postings always belong together.
+public record IndexSnapshot(long generation, TermIndex index, int docCount, long loadedAtMillis) {
+
+    public IndexSnapshot(long generation, TermIndex index) {
+        this(generation, index, index.docCount(), System.currentTimeMillis());
+    }
+
+    public double idf(int docFreq) {
+        return Math.log((docCount + 1.0) / (docFreq + 1.0)) + 1.0;
+    }
+
+    public double bm25Idf(int docFreq) {
+        return Bm25.idf(docCount, docFreq);
+    }
+
+    // The same snapshot, but every term's postings are decoded once for all the searches that
+    // share the returned copy.
+    public IndexSnapshot sharingPostings() {
+        return new IndexSnapshot(generation, new SharedPostingsIndex(index), docCount, loadedAtMillis);
+    }
+}
@@ -0,0 +1,9 @@
+package com.dreamteam.search.index;
+
+// Token positions of one term, decoded only for the books asked for. Books must be asked for
+// in ascending order, each at most once.
+public interface PositionReader {
+
+    // Ascending positions of the term in bookId, or null if the book does not contain it.
+    int[] positions(int bookId);
+}
@@ -0,0 +1,22 @@
+package com.dreamteam.search.index;
+
+// Postings of one term: ascending book ids and, at the same index, the term's frequency in each.
+// Postings merged from weighted expansions (fuzzy terms) also carry a boost in (0, 1] per book;
+// boosts is null when every book counts fully.
+public record Postings(int[] docs, int[] freqs, float[] boosts) {
+    public static final Postings EMPTY = new Postings(new int[0], new int[0]);
+
+    public Postings(int[] docs, int[] freqs) {
+        this(docs, freqs, null);
+    }
+
+    public int docFreq() {
+        return docs.length;
+    }
+
+    public int maxFreq() {
+        int max = 0;
+        for (int freq : freqs) max = Math.max(max, freq);
+        return max;
+    }
+}
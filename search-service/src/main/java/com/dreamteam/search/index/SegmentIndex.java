@@ -0,0 +1,290 @@
+package com.dreamteam.search.index;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import com.google.gson.Gson;
+
+// The live segments listed in the indexer's segments.json. Each segment keeps only its term
+// dictionary's block index in memory; postings stay in the mapped files until a term is asked for.
+public class SegmentIndex implements TermIndex {
+    public static final String MANIFEST = "segments.json";
+
+    private static final Gson gson = new Gson();
+
+    private static class Manifest {
+        long generation;
+        List<SegmentEntry> segments;
+    }
+
+    private static class SegmentEntry {
+        String name;
+        List<Integer> deleted;
+    }
+
+    private final long generation;
+    private final List<String> names;
+    private final List<SegmentReader> readers;
+    private final List<int[]> deleted;
+    private final int termCount;
+    private final int[] liveDocIds;
+    private final int[] liveDocLengths;
+    private final int[] liveDocSegments;
+    private final double averageDocLength;
+    private final int minDocLength;
+
+    private SegmentIndex(long generation, List<String> names, List<SegmentReader> readers, List<int[]> deleted) {
+        this.generation = generation;
+        this.names = names;
+        this.readers = readers;
+        this.deleted = deleted;
+
+        int terms = 0;
+        int total = 0;
+        for (SegmentReader reader : readers) {
+            terms += reader.dictionary().termCount();
+            total += reader.docCount();
+        }
+        this.termCount = terms;
+
+        // one sorted table of live books with their length and segment, gathered once per snapshot;
+        // the low half of each entry indexes the concatenated per-segment doc tables
+        int[] allLengths = new int[total];
+        int[] allSegments = new int[total];
+        long[] packed = new long[total];
+        int live = 0;
+        for (int i = 0, base = 0; i < readers.size(); base += readers.get(i).docCount(), i++) {
+            int[] docIds = readers.get(i).docIds();
+            System.arraycopy(readers.get(i).docLengths(), 0, allLengths, base, docIds.length);
+            Arrays.fill(allSegments, base, base + docIds.length, i);
+            for (int d = 0; d < docIds.length; d++) {
+                if (!isDeleted(i, docIds[d])) packed[live++] = ((long) docIds[d] << 32) | (base + d);
+            }
+        }
+        Arrays.sort(packed, 0, live);
+
+        this.liveDocIds = new int[live];
+        this.liveDocLengths = new int[live];
+        this.liveDocSegments = new int[live];
+        long tokens = 0;
+        int minLength = live > 0 ? Integer.MAX_VALUE : 0;
+        for (int d = 0; d < live; d++) {
+            int offset = (int) packed[d];
+            liveDocIds[d] = (int) (packed[d] >>> 32);
+            liveDocLengths[d] = allLengths[offset];
+            liveDocSegments[d] = allSegments[offset];
+            tokens += liveDocLengths[d];
+            minLength = Math.min(minLength, liveDocLengths[d]);
+        }
+        this.averageDocLength = live > 0 ? tokens / (double) live : 0;
+        this.minDocLength = minLength;
+    }
+
+    private boolean isDeleted(int segment, int docId) {
+        int[] segmentDeleted = deleted.get(segment);
+        return segmentDeleted.length > 0 && Arrays.binarySearch(segmentDeleted, docId) >= 0;
+    }
+
+    public static boolean exists(Path segmentsDir) {
+        return Files.exists(segmentsDir.resolve(MANIFEST));
+    }
+
+    public static SegmentIndex open(Path segmentsDir) throws IOException {
+        return open(segmentsDir, null);
+    }
+
+    // A segment file never changes once written, so segments that previous already mapped are
+    // shared with it instead of being opened again; only their deletions are re-read. A name is
+    // not enough to go by, since a rebuild reuses names: the file itself must be the same one.
+    public static SegmentIndex open(Path segmentsDir, SegmentIndex previous) throws IOException {
+        Manifest manifest = gson.fromJson(Files.readString(segmentsDir.resolve(MANIFEST)), Manifest.class);
+        List<String> names = new ArrayList<>();
+        List<SegmentReader> readers = new ArrayList<>();
+        List<int[]> deleted = new ArrayList<>();
+
+        Map<String, SegmentReader> mapped = new HashMap<>();
+        if (previous != null) {
+            for (int i = 0; i < previous.names.size(); i++) mapped.put(previous.names.get(i), previous.readers.get(i));
+        }
+
+        if (manifest != null && manifest.segments != null) {
+            for (SegmentEntry entry : manifest.segments) {
+                Path file = segmentsDir.resolve(entry.name + SegmentReader.EXTENSION);
+                SegmentReader reader = mapped.get(entry.name);
+                names.add(entry.name);
+                readers.add(reader != null && reader.isBackedBy(file) ? reader : SegmentReader.open(file));
+                deleted.add(entry.deleted == null ? new int[0]
+                        : entry.deleted.stream().mapToInt(Integer::intValue).sorted().toArray());
+            }
+        }
+        return new SegmentIndex(manifest != null ? manifest.generation : 0, names, readers, deleted);
+    }
+
+    public long generation() {
+        return generation;
+    }
+
+    public int segmentCount() {
+        return readers.size();
+    }
+
+    @Override
+    public Postings postings(String term) {
+        Postings[] perSegment = new Postings[readers.size()];
+        int total = 0;
+        for (int i = 0; i < readers.size(); i++) {
+            perSegment[i] = readers.get(i).postings(term);
+            total += perSegment[i].docFreq();
+        }
+
+        long[] packed = new long[total];
+        int size = 0;
+        boolean sorted = true;
+        for (int i = 0; i < perSegment.length; i++) {
+            int[] docs = perSegment[i].docs();
+            int[] freqs = perSegment[i].freqs();
+            for (int d = 0; d < docs.length; d++) {
+                if (isDeleted(i, docs[d])) continue;
+                long entry = ((long) docs[d] << 32) | freqs[d];
+                if (size > 0 && packed[size - 1] > entry) sorted = false;
+                packed[size++] = entry;
+            }
+        }
+        // a book is live in at most one segment, so sorting is enough to merge them
+        if (!sorted) Arrays.sort(packed, 0, size);
+
+        int[] docs = new int[size];
+        int[] freqs = new int[size];
+        for (int d = 0; d < size; d++) {
+            docs[d] = (int) (packed[d] >>> 32);
+            freqs[d] = (int) packed[d];
+        }
+        return new Postings(docs, freqs);
+    }
+
+    // Terms of all segments merged in order; a term present in several segments appears once.
+    // Terms whose books are all deleted are still listed and simply have empty postings.
+    @Override
+    public TermsEnum terms() {
+        return new MergedTermsEnum();
+    }
+
+    // A live book's positions come from the one segment it is live in; each segment's postings
+    // are only looked up once a book from that segment is asked for.
+    @Override
+    public PositionReader positions(String term) {
+        PositionReader[] perSegment = new PositionReader[readers.size()];
+        boolean[] opened = new boolean[readers.size()];
+
+        return bookId -> {
+            int index = Arrays.binarySearch(liveDocIds, bookId);
+            if (index < 0) return null;
+
+            int segment = liveDocSegments[index];
+            if (!opened[segment]) {
+                perSegment[segment] = readers.get(segment).positions(term);
+                opened[segment] = true;
+            }
+            return perSegment[segment] == null ? null : perSegment[segment].positions(bookId);
+        };
+    }
+
+    @Override
+    public int docCount() {
+        return liveDocIds.length;
+    }
+
+    @Override
+    public int docLength(int bookId) {
+        int index = Arrays.binarySearch(liveDocIds, bookId);
+        return index >= 0 ? liveDocLengths[index] : 0;
+    }
+
+    @Override
+    public double averageDocLength() {
+        return averageDocLength;
+    }
+
+    @Override
+    public int minDocLength() {
+        return minDocLength;
+    }
+
+    @Override
+    public int termCount() {
+        return termCount;
+    }
+
+    private final class MergedTermsEnum implements TermsEnum {
+        private final TermDictionary.Cursor[] cursors = new TermDictionary.Cursor[readers.size()];
+        private final String[] current = new String[readers.size()];
+        private final PriorityQueue<Integer> queue =
+                new PriorityQueue<>(Math.max(1, readers.size()), Comparator.comparing(i -> current[i]));
+        private String term;
+
+        MergedTermsEnum() {
+            for (int i = 0; i < cursors.length; i++) cursors[i] = readers.get(i).dictionary().cursor();
+        }
+
+        // Seeking forward past the current term leaves alone the segments already positioned at
+        // or after target (their ceiling is where they are) and those already exhausted.
+        @Override
+        public boolean seekCeil(String target) {
+            if (term == null || target.compareTo(term) <= 0) {
+                queue.clear();
+                for (int i = 0; i < cursors.length; i++) seek(i, target);
+                return pop();
+            }
+
+            List<Integer> behind = new ArrayList<>();
+            for (int i : queue) {
+                if (current[i].compareTo(target) < 0) behind.add(i);
+            }
+            queue.removeAll(behind);
+            for (int i : behind) seek(i, target);
+            return pop();
+        }
+
+        private void seek(int segment, String target) {
+            if (readers.get(segment).dictionary().seekCeil(target, cursors[segment])) {
+                current[segment] = cursors[segment].term();
+                queue.add(segment);
+            }
+        }
+
+        @Override
+        public boolean next() {
+            return term != null && pop();
+        }
+
+        @Override
+        public String term() {
+            return term;
+        }
+
+        // Takes the smallest current term and steps every segment positioned on it.
+        private boolean pop() {
+            if (queue.isEmpty()) {
+                term = null;
+                return false;
+            }
+            term = current[queue.peek()];
+            while (!queue.isEmpty() && current[queue.peek()].equals(term)) {
+                int segment = queue.poll();
+                if (cursors[segment].next()) {
+                    current[segment] = cursors[segment].term();
+                    queue.add(segment);
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.dreamteam.search.index;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Objects;
+
+// Read-only view of one indexer segment. Lookups keep no state between calls, so a reader
+// can be shared by concurrent searches.
+public class SegmentReader {
+    public static final String EXTENSION = ".seg";
+
+    private static final int MAGIC = 0x44545347;
+    private static final byte VERSION = 4;
+    private static final int FOOTER_SIZE = 16;
+
+    private final Path path;
+    private final FileIdentity identity;
+    private final ByteBuffer buffer;
+    private final int[] docIds;
+    private final int[] docLengths;
+    private final TermDictionary dictionary;
+
+    // Which file a path named when it was read. Names alone do not identify a segment: a rebuild
+    // starts numbering from scratch and writes different segments under the same names.
+    private record FileIdentity(Object fileKey, long size, FileTime lastModified) {
+        static FileIdentity of(Path path) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return new FileIdentity(attributes.fileKey(), attributes.size(), attributes.lastModifiedTime());
+        }
+
+        boolean matches(FileIdentity other) {
+            // without file keys (some file systems), size and modification time have to do
+            return Objects.equals(fileKey, other.fileKey) && size == other.size
+                    && lastModified.equals(other.lastModified);
+        }
+    }
+
+    private SegmentReader(Path path, FileIdentity identity, ByteBuffer buffer) throws IOException {
+        this.path = path;
+        this.identity = identity;
+        this.buffer = buffer;
+
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a segment file: " + path);
+        }
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IOException("Unsupported segment version " + version + " in " + path);
+        }
+        this.docIds = new int[VarInt.read(buffer)];
+        this.docLengths = new int[docIds.length];
+        int docId = 0;
+        for (int i = 0; i < docIds.length; i++) {
+            docId += VarInt.read(buffer);
+            docIds[i] = docId;
+            docLengths[i] = VarInt.read(buffer);
+        }
+
+        ByteBuffer footer = buffer.duplicate();
+        footer.position(buffer.limit() - FOOTER_SIZE);
+        int dictStart = footer.getInt();
+        int indexStart = footer.getInt();
+        int termCount = footer.getInt();
+        if (footer.getInt() != MAGIC) {
+            throw new IOException("Truncated segment file: " + path);
+        }
+        this.dictionary = TermDictionary.read(buffer, dictStart, indexStart, termCount);
+    }
+
+    public static SegmentReader open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            FileIdentity identity = FileIdentity.of(path);
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new SegmentReader(path, identity, buffer);
+        }
+    }
+
+    // True if path still names the file this reader mapped, false if it is gone or was replaced.
+    public boolean isBackedBy(Path path) {
+        try {
+            return identity.matches(FileIdentity.of(path));
+        } catch (IOException exception) {
+            return false;
+        }
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public int docCount() {
+        return docIds.length;
+    }
+
+    public int[] docIds() {
+        return docIds;
+    }
+
+    // Parallel to docIds(): the token count of each book.
+    public int[] docLengths() {
+        return docLengths;
+    }
+
+    public TermDictionary dictionary() {
+        return dictionary;
+    }
+
+    // Books containing term, ascending, with term frequencies; positions are skipped undecoded.
+    public Postings postings(String term) {
+        TermDictionary.Cursor cursor = dictionary.lookup(term);
+        return cursor == null ? Postings.EMPTY : postings(cursor);
+    }
+
+    public Postings postings(TermDictionary.Cursor cursor) {
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(cursor.postingsOffset());
+
+        int[] docs = new int[cursor.docFreq()];
+        int[] freqs = new int[docs.length];
+        int docId = 0;
+        for (int i = 0; i < docs.length; i++) {
+            docId += VarInt.read(payload);
+            int freq = VarInt.read(payload);
+            for (int p = 0; p < freq; p++) VarInt.read(payload);
+            docs[i] = docId;
+            freqs[i] = freq;
+        }
+        return new Postings(docs, freqs);
+    }
+
+    // Positions of term in this segment's books, or null if the segment does not contain it.
+    public PositionReader positions(String term) {
+        TermDictionary.Cursor cursor = dictionary.lookup(term);
+        if (cursor == null) return null;
+
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(cursor.postingsOffset());
+        return new PositionScanner(payload, cursor.docFreq());
+    }
+
+    // Walks the postings once; books that are not asked for have their positions skipped.
+    private static final class PositionScanner implements PositionReader {
+        private final ByteBuffer payload;
+        private int remaining;
+        private int docId;
+        private int freq;
+        private boolean pending;
+
+        PositionScanner(ByteBuffer payload, int docFreq) {
+            this.payload = payload;
+            this.remaining = docFreq;
+        }
+
+        @Override
+        public int[] positions(int bookId) {
+            while (true) {
+                if (!pending) {
+                    if (remaining == 0) return null;
+                    remaining--;
+                    docId += VarInt.read(payload);
+                    freq = VarInt.read(payload);
+                    pending = true;
+                }
+                if (docId > bookId) return null;
+
+                pending = false;
+                if (docId == bookId) {
+                    int[] positions = new int[freq];
+                    int position = 0;
+                    for (int p = 0; p < freq; p++) {
+                        position += VarInt.read(payload);
+                        positions[p] = position;
+                    }
+                    return positions;
+                }
+                for (int p = 0; p < freq; p++) VarInt.read(payload);
+            }
+        }
+    }
+}
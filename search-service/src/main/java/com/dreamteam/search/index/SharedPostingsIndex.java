@@ -0,0 +1,55 @@
+package com.dreamteam.search.index;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// An index whose postings are decoded at most once per term, however many threads ask for them.
+// Meant for a short-lived group of searches such as a batch; it keeps whatever it decoded.
+final class SharedPostingsIndex implements TermIndex {
+    private final TermIndex index;
+    private final Map<String, Postings> postings = new ConcurrentHashMap<>();
+
+    SharedPostingsIndex(TermIndex index) {
+        this.index = index;
+    }
+
+    @Override
+    public Postings postings(String term) {
+        return postings.computeIfAbsent(term, index::postings);
+    }
+
+    @Override
+    public TermsEnum terms() {
+        return index.terms();
+    }
+
+    @Override
+    public PositionReader positions(String term) {
+        return index.positions(term);
+    }
+
+    @Override
+    public int docCount() {
+        return index.docCount();
+    }
+
+    @Override
+    public int termCount() {
+        return index.termCount();
+    }
+
+    @Override
+    public int docLength(int bookId) {
+        return index.docLength(bookId);
+    }
+
+    @Override
+    public double averageDocLength() {
+        return index.averageDocLength();
+    }
+
+    @Override
+    public int minDocLength() {
+        return index.minDocLength();
+    }
+}
@@ -0,0 +1,25 @@
+package com.dreamteam.search.index;
+
+public interface TermIndex {
+
+    // Ascending, distinct ids of the live books containing term, with term frequencies.
+    Postings postings(String term);
+
+    // A fresh walk over the dictionary, for expanding prefix and wildcard terms.
+    TermsEnum terms();
+
+    // Positions of term in the live books, or null when the index does not record positions.
+    PositionReader positions(String term);
+
+    int docCount();
+
+    int termCount();
+
+    // Token count of a live book, or 0 when the index does not record lengths.
+    int docLength(int bookId);
+
+    // 0 when the index does not record lengths.
+    double averageDocLength();
+
+    int minDocLength();
+}
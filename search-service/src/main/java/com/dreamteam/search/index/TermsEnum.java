@@ -0,0 +1,14 @@
+package com.dreamteam.search.index;
+
+// Walks the distinct terms of an index in ascending order. It starts unpositioned: call
+// seekCeil first (seekCeil("") for the first term).
+public interface TermsEnum {
+
+    // Positions on the first term >= target; false when there is none.
+    boolean seekCeil(String target);
+
+    // Moves to the next term; false at the end.
+    boolean next();
+
+    String term();
+}
@@ -0,0 +1,24 @@
+package com.dreamteam.search.index;
+
+import java.nio.ByteBuffer;
+
+public final class VarInt {
+
+    private VarInt() {}
+
+    // Little-endian base-128 as written by the indexer: seven payload bits per byte,
+    // high bit set while more bytes follow.
+    public static int read(ByteBuffer buffer) {
+        int b = buffer.get();
+        if (b >= 0) return b;
+
+        int value = b & 0x7F;
+        int shift = 7;
+        while (true) {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+            shift += 7;
+        }
+    }
+}
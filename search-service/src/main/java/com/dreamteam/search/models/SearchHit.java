@@ -0,0 +1,3 @@
+package com.dreamteam.search.models;
+
+public record SearchHit(int bookId, double score, String title, String author, String language) {}
@@ -0,0 +1,31 @@
+package com.dreamteam.search.query;
+
+// Okapi BM25: k1 caps how much repeated occurrences of a term can add, b sets how strongly
+// long books are penalized relative to the average length.
+public final class Bm25 {
+    private final double k1;
+    private final double b;
+
+    public Bm25(double k1, double b) {
+        this.k1 = k1;
+        this.b = b;
+    }
+
+    public static double idf(int docCount, int docFreq) {
+        return Math.log(1.0 + (docCount - docFreq + 0.5) / (docFreq + 0.5));
+    }
+
+    // Grows with freq and shrinks with docLength, so (max freq, min length) bounds a term's score.
+    public double tf(int freq, int docLength, double averageDocLength) {
+        double relativeLength = averageDocLength > 0 ? docLength / averageDocLength : 1.0;
+        return freq * (k1 + 1.0) / (freq + k1 * (1.0 - b + b * relativeLength));
+    }
+
+    public double k1() {
+        return k1;
+    }
+
+    public double b() {
+        return b;
+    }
+}
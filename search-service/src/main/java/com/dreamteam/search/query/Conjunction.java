@@ -0,0 +1,76 @@
+package com.dreamteam.search.query;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// Books every iterator matches. The cheapest iterator leads and proposes candidates; the others
+// gallop to each candidate, and any mismatch makes the lead jump past it, so the cost follows
+// the rarest iterator rather than the longest. Filters only restrict; the score is the sum of
+// the scored iterators. With phrases set, a candidate must also pass the position check.
+public final class Conjunction implements QueryIterator {
+    private final QueryIterator[] scored;
+    private final DocIterator lead;
+    private final DocIterator[] others;
+    private final PhraseFilter phrases;
+    private int doc;
+
+    public Conjunction(List<? extends QueryIterator> scored, List<? extends DocIterator> filters,
+                       PhraseFilter phrases) {
+        this.scored = scored.toArray(new QueryIterator[0]);
+        this.phrases = phrases;
+
+        List<DocIterator> byCost = new ArrayList<>(scored);
+        byCost.addAll(filters);
+        byCost.sort(Comparator.comparingInt(DocIterator::cost));
+        this.lead = byCost.get(0);
+        this.others = byCost.subList(1, byCost.size()).toArray(new DocIterator[0]);
+        this.doc = align(lead.doc());
+    }
+
+    @Override
+    public int doc() {
+        return doc;
+    }
+
+    @Override
+    public int next() {
+        return doc == NO_MORE_DOCS ? doc : (doc = align(lead.next()));
+    }
+
+    @Override
+    public int advance(int target) {
+        return doc >= target ? doc : (doc = align(lead.advance(target)));
+    }
+
+    @Override
+    public int cost() {
+        return lead.cost();
+    }
+
+    @Override
+    public double score() {
+        double score = 0.0;
+        for (QueryIterator iterator : scored) score += iterator.score();
+        return score;
+    }
+
+    // First match at or after the lead's candidate.
+    private int align(int candidate) {
+        while (candidate != NO_MORE_DOCS) {
+            int next = candidate;
+            for (DocIterator other : others) {
+                next = other.advance(candidate);
+                if (next != candidate) break;
+            }
+
+            if (next == candidate) {
+                if (phrases == null || phrases.accepts(candidate)) return candidate;
+                candidate = lead.next();
+            } else {
+                candidate = lead.advance(next);
+            }
+        }
+        return NO_MORE_DOCS;
+    }
+}
@@ -0,0 +1,60 @@
+package com.dreamteam.search.query;
+
+import java.util.List;
+
+// Books any iterator matches, stepping every iterator on the smallest current book. The score is
+// the sum of the iterators on the book.
+public final class Disjunction implements QueryIterator {
+    private final QueryIterator[] iterators;
+    private int doc;
+
+    public Disjunction(List<? extends QueryIterator> iterators) {
+        this.iterators = iterators.toArray(new QueryIterator[0]);
+        this.doc = smallest();
+    }
+
+    @Override
+    public int doc() {
+        return doc;
+    }
+
+    @Override
+    public int next() {
+        if (doc == NO_MORE_DOCS) return doc;
+        for (QueryIterator iterator : iterators) {
+            if (iterator.doc() == doc) iterator.next();
+        }
+        return doc = smallest();
+    }
+
+    @Override
+    public int advance(int target) {
+        if (doc >= target) return doc;
+        for (QueryIterator iterator : iterators) {
+            if (iterator.doc() < target) iterator.advance(target);
+        }
+        return doc = smallest();
+    }
+
+    @Override
+    public int cost() {
+        long cost = 0;
+        for (QueryIterator iterator : iterators) cost += iterator.cost();
+        return (int) Math.min(cost, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public double score() {
+        double score = 0.0;
+        for (QueryIterator iterator : iterators) {
+            if (iterator.doc() == doc) score += iterator.score();
+        }
+        return score;
+    }
+
+    private int smallest() {
+        int smallest = NO_MORE_DOCS;
+        for (QueryIterator iterator : iterators) smallest = Math.min(smallest, iterator.doc());
+        return smallest;
+    }
+}
@@ -0,0 +1,18 @@
+package com.dreamteam.search.query;
+
+// Ascending walk over a set of book ids that can skip ahead, so postings and filters can be
+// intersected the same way.
+public interface DocIterator {
+    int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    // Current book id, NO_MORE_DOCS once exhausted.
+    int doc();
+
+    int next();
+
+    // Moves to the first book id >= target; never moves backwards.
+    int advance(int target);
+
+    // Number of book ids the iterator walks in total, used to pick the cheapest lead.
+    int cost();
+}
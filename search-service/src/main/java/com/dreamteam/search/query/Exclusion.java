@@ -0,0 +1,47 @@
+package com.dreamteam.search.query;
+
+// Books of include that exclude does not match: a sorted-list difference. exclude is only
+// advanced to the books include proposes, so the cost is one pass over both.
+public final class Exclusion implements QueryIterator {
+    private final QueryIterator include;
+    private final DocIterator exclude;
+    private int doc;
+
+    public Exclusion(QueryIterator include, DocIterator exclude) {
+        this.include = include;
+        this.exclude = exclude;
+        this.doc = skipExcluded(include.doc());
+    }
+
+    @Override
+    public int doc() {
+        return doc;
+    }
+
+    @Override
+    public int next() {
+        return doc == NO_MORE_DOCS ? doc : (doc = skipExcluded(include.next()));
+    }
+
+    @Override
+    public int advance(int target) {
+        return doc >= target ? doc : (doc = skipExcluded(include.advance(target)));
+    }
+
+    @Override
+    public int cost() {
+        return include.cost();
+    }
+
+    @Override
+    public double score() {
+        return include.score();
+    }
+
+    private int skipExcluded(int candidate) {
+        while (candidate != NO_MORE_DOCS && exclude.advance(candidate) == candidate) {
+            candidate = include.next();
+        }
+        return candidate;
+    }
+}
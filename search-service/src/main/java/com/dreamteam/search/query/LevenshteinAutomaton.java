@@ -0,0 +1,219 @@
+package com.dreamteam.search.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import com.dreamteam.search.index.TermsEnum;
+
+// Accepts the strings within maxEdits insertions, deletions or substitutions of a word. States of
+// the deterministic automaton are built on demand: each records, per position in the word, the
+// fewest edits that reach it. Characters that do not occur in the word all behave alike, so every
+// state has at most one outgoing edge per distinct character of the word plus one for the rest.
+//
+// expand() intersects the automaton with a sorted dictionary without visiting every term: it asks
+// the automaton for the smallest accepted string >= the current term and seeks the dictionary
+// there, and vice versa, so whole ranges that cannot match are skipped in one seek.
+public final class LevenshteinAutomaton {
+
+    // A dictionary term and its edit distance from the word.
+    public record Expansion(String term, int distance) {}
+
+    private static final Comparator<Expansion> WORST_FIRST = Comparator
+            .comparingInt(Expansion::distance).thenComparing(Expansion::term).reversed();
+
+    private final String word;
+    private final int maxEdits;
+    private final char[] alphabet;
+    private final Map<String, State> states = new HashMap<>();
+    private final State start;
+
+    public LevenshteinAutomaton(String word, int maxEdits) {
+        this.word = word;
+        this.maxEdits = maxEdits;
+        this.alphabet = distinctChars(word);
+
+        int[] errors = new int[word.length() + 1];
+        Arrays.fill(errors, maxEdits + 1);
+        errors[0] = 0;
+        closeOverDeletions(errors);
+        this.start = state(errors);
+    }
+
+    // The dictionary terms the automaton accepts. Past limit, the closest ones are kept (ties go to
+    // the lower term); the result is in term order.
+    public List<Expansion> expand(TermsEnum terms, int limit) {
+        PriorityQueue<Expansion> best = new PriorityQueue<>(WORST_FIRST);
+        if (limit <= 0) return new ArrayList<>();
+
+        String match = nextValidString("");
+        while (match != null && terms.seekCeil(match)) {
+            String term = terms.term();
+            if (term.equals(match)) {
+                best.add(new Expansion(term, distance(term)));
+                if (best.size() > limit) best.poll();
+                term += '\0';
+            }
+            match = nextValidString(term);
+        }
+
+        List<Expansion> expansions = new ArrayList<>(best);
+        expansions.sort(Comparator.comparing(Expansion::term));
+        return expansions;
+    }
+
+    // Edit distance between the word and s, or -1 if it exceeds maxEdits.
+    public int distance(String s) {
+        State state = start;
+        for (int i = 0; i < s.length() && state != null; i++) state = state.step(s.charAt(i));
+        return state == null ? -1 : state.distance;
+    }
+
+    // The smallest accepted string >= input, or null if there is none. Runs the input as far as
+    // the automaton allows, then backtracks to the deepest point where a larger edge exists and
+    // completes the string with the smallest edges from there. Every live state can still reach
+    // an accepting one (by matching the rest of the word), so the descent never dead-ends.
+    String nextValidString(String input) {
+        // path[0, depth) is the current prefix and states[depth] the state it leads to; a live
+        // prefix is never longer than word.length() + maxEdits
+        StringBuilder path = new StringBuilder(input);
+        State[] states = new State[Math.max(input.length(), word.length() + maxEdits) + 2];
+        states[0] = start;
+        int depth = 0;
+        while (depth < input.length()) {
+            State next = states[depth].step(input.charAt(depth));
+            if (next == null) break;
+            states[++depth] = next;
+        }
+
+        // the last edge tried from states[depth]; -1 when none has been
+        int edge;
+        if (depth == input.length()) {
+            if (states[depth].distance >= 0) return input;
+            edge = -1;
+        } else {
+            edge = input.charAt(depth);
+        }
+
+        while (true) {
+            int c = states[depth].nextEdge(edge);
+            if (c < 0) {
+                if (depth == 0) return null;
+                depth--;
+                edge = path.charAt(depth);
+                continue;
+            }
+            path.setLength(depth);
+            path.append((char) c);
+            states[depth + 1] = states[depth].step((char) c);
+            depth++;
+            if (states[depth].distance >= 0) return path.toString();
+            edge = -1;
+        }
+    }
+
+    private State state(int[] errors) {
+        StringBuilder key = new StringBuilder(errors.length);
+        for (int e : errors) key.append((char) e);
+        return states.computeIfAbsent(key.toString(), k -> new State(errors));
+    }
+
+    private final class State {
+        final int[] errors;
+        // fewest edits at the end of the word, -1 if the state does not accept
+        final int distance;
+        final State[] next = new State[alphabet.length];
+        final boolean[] computed = new boolean[alphabet.length];
+        State other;
+        boolean otherComputed;
+
+        State(int[] errors) {
+            this.errors = errors;
+            int end = errors[word.length()];
+            this.distance = end <= maxEdits ? end : -1;
+        }
+
+        // The next state on c, or null if no string through it can be accepted.
+        State step(char c) {
+            int slot = Arrays.binarySearch(alphabet, c);
+            if (slot >= 0) {
+                if (!computed[slot]) {
+                    next[slot] = transition(c);
+                    computed[slot] = true;
+                }
+                return next[slot];
+            }
+            if (!otherComputed) {
+                other = transition(c);
+                otherComputed = true;
+            }
+            return other;
+        }
+
+        // Smallest character > after with a live edge, or -1. Surrogates are skipped: dictionary
+        // terms are compared as UTF-8, where a lone surrogate has no encoding.
+        int nextEdge(int after) {
+            int best = -1;
+            for (char c : alphabet) {
+                if (c > after && step(c) != null) {
+                    best = c;
+                    break;
+                }
+            }
+
+            int c = after + 1;
+            while (c <= Character.MAX_VALUE) {
+                if (Character.isSurrogate((char) c)) {
+                    c = Character.MAX_SURROGATE + 1;
+                } else if (Arrays.binarySearch(alphabet, (char) c) >= 0) {
+                    c++;
+                } else {
+                    break;
+                }
+            }
+            if (c <= Character.MAX_VALUE && (best < 0 || c < best) && step((char) c) != null) best = c;
+            return best;
+        }
+
+        private State transition(char c) {
+            int n = word.length();
+            int[] target = new int[n + 1];
+            Arrays.fill(target, maxEdits + 1);
+            boolean live = false;
+            for (int i = 0; i <= n; i++) {
+                int e = errors[i];
+                if (e > maxEdits) continue;
+                if (i < n && word.charAt(i) == c) target[i + 1] = Math.min(target[i + 1], e);
+                if (e < maxEdits) {
+                    // c inserted, or c substituted for the next character of the word
+                    target[i] = Math.min(target[i], e + 1);
+                    if (i < n) target[i + 1] = Math.min(target[i + 1], e + 1);
+                }
+            }
+            closeOverDeletions(target);
+            for (int e : target) live |= e <= maxEdits;
+            return live ? state(target) : null;
+        }
+    }
+
+    // Skipping a character of the word costs one edit and consumes no input.
+    private void closeOverDeletions(int[] errors) {
+        for (int i = 0; i < word.length(); i++) {
+            if (errors[i] < maxEdits) errors[i + 1] = Math.min(errors[i + 1], errors[i] + 1);
+        }
+    }
+
+    private static char[] distinctChars(String word) {
+        char[] chars = word.toCharArray();
+        Arrays.sort(chars);
+        int size = 0;
+        for (int i = 0; i < chars.length; i++) {
+            if (size == 0 || chars[size - 1] != chars[i]) chars[size++] = chars[i];
+        }
+        return Arrays.copyOf(chars, size);
+    }
+}
@@ -0,0 +1,60 @@
+package com.dreamteam.search.query;
+
+import java.util.List;
+
+// A quoted part of a query. With window 0 ("a b c") the terms must occur as consecutive tokens
+// in that order; with a window N ("a b c"~N) one occurrence of each distinct term must lie
+// within N positions of the others, in any order.
+public record Phrase(List<String> terms, int window) {
+
+    public boolean exact() {
+        return window == 0;
+    }
+
+    // positions[i] holds the ascending positions of terms().get(i) in one book.
+    public boolean matches(int[][] positions) {
+        return exact() ? consecutive(positions) : withinWindow(positions, window);
+    }
+
+    // Starts of the phrase are the positions of the first term that every later term i
+    // continues at start + i; the candidates shrink with each term, merged in one pass.
+    private static boolean consecutive(int[][] positions) {
+        int[] starts = positions[0].clone();
+        int count = starts.length;
+
+        for (int i = 1; i < positions.length && count > 0; i++) {
+            int[] next = positions[i];
+            int kept = 0;
+            int p = 0;
+            for (int s = 0; s < count; s++) {
+                int wanted = starts[s] + i;
+                while (p < next.length && next[p] < wanted) p++;
+                if (p == next.length) break;
+                if (next[p] == wanted) starts[kept++] = starts[s];
+            }
+            count = kept;
+        }
+        return count > 0;
+    }
+
+    // Smallest span covering one position of every list: keep a pointer per list, and while
+    // the span is too wide move the pointer on the lowest position forward.
+    private static boolean withinWindow(int[][] positions, int window) {
+        int[] pointers = new int[positions.length];
+        while (true) {
+            int lowest = 0;
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for (int i = 0; i < positions.length; i++) {
+                int position = positions[i][pointers[i]];
+                if (position < min) {
+                    min = position;
+                    lowest = i;
+                }
+                max = Math.max(max, position);
+            }
+            if (max - min <= window) return true;
+            if (++pointers[lowest] == positions[lowest].length) return false;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.dreamteam.search.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.dreamteam.search.index.PositionReader;
+import com.dreamteam.search.index.TermIndex;
+
+// Checks the phrases of a query against books that already contain all of their terms. A
+// term's positions are decoded only for the books passed to accepts(), which must come in
+// ascending order, and only as far as a phrase needs them.
+public final class PhraseFilter {
+    private final List<Phrase> phrases;
+    private final List<int[]> termSlots;
+    private final PositionReader[] readers;
+    private final int[][] positions;
+    private final int[] decodedFor;
+
+    // Returns null when the index keeps no positions; books then only need all the terms.
+    public static PhraseFilter create(TermIndex index, List<Phrase> phrases) {
+        Map<String, Integer> slots = new LinkedHashMap<>();
+        List<int[]> termSlots = new ArrayList<>(phrases.size());
+        for (Phrase phrase : phrases) {
+            int[] slotsOfPhrase = new int[phrase.terms().size()];
+            for (int i = 0; i < slotsOfPhrase.length; i++) {
+                slotsOfPhrase[i] = slots.computeIfAbsent(phrase.terms().get(i), term -> slots.size());
+            }
+            termSlots.add(slotsOfPhrase);
+        }
+
+        PositionReader[] readers = new PositionReader[slots.size()];
+        for (Map.Entry<String, Integer> slot : slots.entrySet()) {
+            readers[slot.getValue()] = index.positions(slot.getKey());
+            if (readers[slot.getValue()] == null) return null;
+        }
+        return new PhraseFilter(phrases, termSlots, readers);
+    }
+
+    private PhraseFilter(List<Phrase> phrases, List<int[]> termSlots, PositionReader[] readers) {
+        this.phrases = phrases;
+        this.termSlots = termSlots;
+        this.readers = readers;
+        this.positions = new int[readers.length][];
+        this.decodedFor = new int[readers.length];
+        Arrays.fill(decodedFor, -1);
+    }
+
+    public boolean accepts(int bookId) {
+        for (int p = 0; p < phrases.size(); p++) {
+            int[] slots = termSlots.get(p);
+            if (slots.length < 2) continue;
+
+            int[][] phrasePositions = new int[slots.length][];
+            for (int i = 0; i < slots.length; i++) {
+                phrasePositions[i] = positions(slots[i], bookId);
+                if (phrasePositions[i] == null) return false;
+            }
+            if (!phrases.get(p).matches(phrasePositions)) return false;
+        }
+        return true;
+    }
+
+    private int[] positions(int slot, int bookId) {
+        if (decodedFor[slot] != bookId) {
+            positions[slot] = readers[slot].positions(bookId);
+            decodedFor[slot] = bookId;
+        }
+        return positions[slot];
+    }
+}
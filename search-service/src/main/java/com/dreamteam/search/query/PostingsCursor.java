@@ -0,0 +1,84 @@
+package com.dreamteam.search.query;
+
+import com.dreamteam.search.index.Postings;
+
+// Forward-only cursor over one term's postings, scoring the doc it is on.
+public final class PostingsCursor implements QueryIterator {
+
+    public interface Scorer {
+        double score(int doc, int freq);
+    }
+
+    private final int[] docs;
+    private final int[] freqs;
+    private final float[] boosts;
+    private final Scorer scorer;
+    private final double maxScore;
+    private int index;
+
+    // maxScore must bound every score the scorer returns for these postings (boosts never exceed 1).
+    public PostingsCursor(Postings postings, Scorer scorer, double maxScore) {
+        this.docs = postings.docs();
+        this.freqs = postings.freqs();
+        this.boosts = postings.boosts();
+        this.scorer = scorer;
+        this.maxScore = maxScore;
+    }
+
+    @Override
+    public int doc() {
+        return index < docs.length ? docs[index] : NO_MORE_DOCS;
+    }
+
+    @Override
+    public int next() {
+        index++;
+        return doc();
+    }
+
+    // Moves to the first doc >= target by galloping: probe 1, 2, 4, ... entries ahead until the
+    // target is passed, then binary-search the last gap. Cost is logarithmic in the distance
+    // skipped, so a long list is cheap to advance through in big jumps.
+    @Override
+    public int advance(int target) {
+        if (index >= docs.length || docs[index] >= target) return doc();
+
+        int low = index;
+        int step = 1;
+        int high = index + step;
+        while (high < docs.length && docs[high] < target) {
+            low = high;
+            step <<= 1;
+            high = index + step;
+        }
+        high = Math.min(high, docs.length);
+
+        // docs[low] < target, and docs[high] >= target or high == docs.length
+        while (low + 1 < high) {
+            int mid = (low + high) >>> 1;
+            if (docs[mid] < target) low = mid;
+            else high = mid;
+        }
+        index = high;
+        return doc();
+    }
+
+    @Override
+    public int cost() {
+        return docs.length;
+    }
+
+    public int freq() {
+        return freqs[index];
+    }
+
+    @Override
+    public double score() {
+        double score = scorer.score(docs[index], freqs[index]);
+        return boosts == null ? score : score * boosts[index];
+    }
+
+    public double maxScore() {
+        return maxScore;
+    }
+}
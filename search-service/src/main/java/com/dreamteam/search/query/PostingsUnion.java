@@ -0,0 +1,59 @@
+package com.dreamteam.search.query;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.dreamteam.search.index.Postings;
+
+// Merges the postings of several terms into the postings of one virtual term: every book
+// containing any of them, with their frequencies added up. The lists are consumed through a
+// heap keyed by their current book id, so the merge is one pass over k sorted lists.
+public final class PostingsUnion {
+
+    private PostingsUnion() {}
+
+    public static Postings merge(List<Postings> lists) {
+        return merge(lists, null);
+    }
+
+    // With weights (parallel to lists, each in (0, 1]) a book is boosted by the largest weight
+    // among the lists that contain it.
+    public static Postings merge(List<Postings> lists, float[] weights) {
+        if (lists.isEmpty()) return Postings.EMPTY;
+        if (lists.size() == 1 && (weights == null || weights[0] == 1f)) return lists.get(0);
+
+        int total = 0;
+        for (Postings postings : lists) total += postings.docFreq();
+
+        int[] positions = new int[lists.size()];
+        PriorityQueue<Integer> heap = new PriorityQueue<>(lists.size(),
+                (a, b) -> Integer.compare(lists.get(a).docs()[positions[a]], lists.get(b).docs()[positions[b]]));
+        for (int i = 0; i < lists.size(); i++) {
+            if (lists.get(i).docFreq() > 0) heap.add(i);
+        }
+
+        int[] docs = new int[total];
+        int[] freqs = new int[total];
+        float[] boosts = weights != null ? new float[total] : null;
+        int size = 0;
+        while (!heap.isEmpty()) {
+            int list = heap.poll();
+            Postings postings = lists.get(list);
+            int doc = postings.docs()[positions[list]];
+
+            if (size > 0 && docs[size - 1] == doc) {
+                freqs[size - 1] += postings.freqs()[positions[list]];
+                if (boosts != null) boosts[size - 1] = Math.max(boosts[size - 1], weights[list]);
+            } else {
+                docs[size] = doc;
+                freqs[size] = postings.freqs()[positions[list]];
+                if (boosts != null) boosts[size] = weights[list];
+                size++;
+            }
+            if (++positions[list] < postings.docFreq()) heap.add(list);
+        }
+        return new Postings(Arrays.copyOf(docs, size), Arrays.copyOf(freqs, size),
+                boosts != null ? Arrays.copyOf(boosts, size) : null);
+    }
+}
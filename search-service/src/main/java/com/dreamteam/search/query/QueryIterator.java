@@ -0,0 +1,8 @@
+package com.dreamteam.search.query;
+
+// A DocIterator over the books a query (or part of one) matches, able to score the book it is on.
+public interface QueryIterator extends DocIterator {
+
+    // Score of the current book; only valid while doc() is a book.
+    double score();
+}
@@ -0,0 +1,16 @@
+package com.dreamteam.search.query;
+
+import java.util.List;
+
+// A parsed boolean query.
+public sealed interface QueryNode {
+
+    // A bare word, possibly with wildcards.
+    record Term(String word) implements QueryNode {}
+
+    record PhraseMatch(Phrase phrase) implements QueryNode {}
+
+    // Books matching every must clause (or, when there is none, at least one should clause) and
+    // no mustNot clause. Should clauses that match add their score either way.
+    record Bool(List<QueryNode> must, List<QueryNode> should, List<QueryNode> mustNot) implements QueryNode {}
+}
@@ -0,0 +1,259 @@
+package com.dreamteam.search.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Query syntax on top of words and "quoted phrases" (optionally "..."~N):
+//
+//   a AND b, a OR b, NOT a    operators, upper case only; AND binds tighter than OR
+//   +a, -a                    a is required / excluded (-a is NOT a)
+//   ( ... )                   grouping
+//
+// Clauses without an operator between them are joined by the default operator (the search mode).
+// A phrase standing next to other clauses without an explicit OR stays required, as it is in a
+// plain OR query. Excluded clauses only subtract from the clauses they are joined with; a query
+// of exclusions alone matches nothing. The parser never rejects input: dangling operators,
+// unbalanced parentheses and unmatched quotes are dropped.
+public final class QueryParser {
+
+    private static final Pattern WINDOW = Pattern.compile("~(\\d{1,9})");
+
+    private enum Kind { WORD, PHRASE, AND, OR, NOT, PLUS, MINUS, OPEN, CLOSE }
+
+    private record Token(Kind kind, String word, Phrase phrase) {}
+
+    private enum Occur { DEFAULT, MUST, MUST_NOT }
+
+    // explicitOr: the clause was joined to a neighbour by an explicit OR
+    private record Clause(QueryNode node, Occur occur, boolean explicitOr) {}
+
+    private final List<Token> tokens = new ArrayList<>();
+    private int position;
+
+    public QueryParser(String query) {
+        lex(query);
+    }
+
+    // False for plain words and phrases, which the engine evaluates without a query plan.
+    public boolean hasOperators() {
+        for (Token token : tokens) {
+            if (token.kind() != Kind.WORD && token.kind() != Kind.PHRASE) return true;
+        }
+        return false;
+    }
+
+    // The bare words of the query in order, operators ignored.
+    public List<String> words() {
+        List<String> words = new ArrayList<>();
+        for (Token token : tokens) {
+            if (token.kind() == Kind.WORD) words.add(token.word());
+        }
+        return words;
+    }
+
+    public List<Phrase> phrases() {
+        List<Phrase> phrases = new ArrayList<>();
+        for (Token token : tokens) {
+            if (token.kind() == Kind.PHRASE) phrases.add(token.phrase());
+        }
+        return phrases;
+    }
+
+    // The query tree, or null if nothing is left of the query.
+    public QueryNode parse(boolean andByDefault) {
+        position = 0;
+        return group(andByDefault, 0);
+    }
+
+    private QueryNode group(boolean andByDefault, int depth) {
+        List<Clause> items = new ArrayList<>();
+        List<Clause> chain = new ArrayList<>();
+        boolean orBefore = false;
+        boolean joinedByAnd = false;
+
+        while (position < tokens.size()) {
+            Kind kind = tokens.get(position).kind();
+            if (kind == Kind.CLOSE) {
+                if (depth > 0) break;
+                position++;
+                continue;
+            }
+            if (kind == Kind.AND) {
+                position++;
+                joinedByAnd = true;
+                continue;
+            }
+            if (kind == Kind.OR) {
+                position++;
+                if (!chain.isEmpty()) items.add(closeChain(chain, orBefore, true));
+                chain.clear();
+                orBefore = true;
+                joinedByAnd = false;
+                continue;
+            }
+
+            Clause clause = clause(andByDefault, depth);
+            if (clause == null) continue;
+            if (!chain.isEmpty() && !joinedByAnd && !andByDefault) {
+                items.add(closeChain(chain, orBefore, false));
+                chain.clear();
+                orBefore = false;
+            }
+            chain.add(clause);
+            joinedByAnd = false;
+        }
+        if (!chain.isEmpty()) items.add(closeChain(chain, orBefore, false));
+
+        List<QueryNode> must = new ArrayList<>();
+        List<QueryNode> should = new ArrayList<>();
+        List<QueryNode> mustNot = new ArrayList<>();
+        for (Clause item : items) {
+            if (item.occur() == Occur.MUST_NOT) {
+                mustNot.add(item.node());
+            } else if (item.occur() == Occur.MUST || (item.node() instanceof QueryNode.PhraseMatch
+                    && !andByDefault && !item.explicitOr())) {
+                must.add(item.node());
+            } else {
+                should.add(item.node());
+            }
+        }
+
+        if (mustNot.isEmpty() && must.size() + should.size() == 1) {
+            return must.isEmpty() ? should.get(0) : must.get(0);
+        }
+        if (must.isEmpty() && should.isEmpty() && mustNot.isEmpty()) return null;
+        return new QueryNode.Bool(must, should, mustNot);
+    }
+
+    // Clauses joined by AND are all required, except the excluded ones.
+    private static Clause closeChain(List<Clause> chain, boolean orBefore, boolean orAfter) {
+        boolean explicitOr = orBefore || orAfter;
+        if (chain.size() == 1) {
+            Clause only = chain.get(0);
+            return new Clause(only.node(), only.occur(), explicitOr);
+        }
+
+        List<QueryNode> must = new ArrayList<>();
+        List<QueryNode> mustNot = new ArrayList<>();
+        for (Clause clause : chain) {
+            (clause.occur() == Occur.MUST_NOT ? mustNot : must).add(clause.node());
+        }
+        return new Clause(new QueryNode.Bool(must, List.of(), mustNot), Occur.DEFAULT, explicitOr);
+    }
+
+    // A word, phrase or group with its +, - or NOT prefixes; null if nothing follows the prefixes.
+    private Clause clause(boolean andByDefault, int depth) {
+        Occur occur = Occur.DEFAULT;
+        while (position < tokens.size()) {
+            Kind kind = tokens.get(position).kind();
+            if (kind == Kind.NOT || kind == Kind.MINUS) {
+                occur = Occur.MUST_NOT;
+            } else if (kind == Kind.PLUS) {
+                if (occur == Occur.DEFAULT) occur = Occur.MUST;
+            } else {
+                break;
+            }
+            position++;
+        }
+        if (position == tokens.size()) return null;
+
+        Token token = tokens.get(position);
+        QueryNode node;
+        switch (token.kind()) {
+            case WORD -> {
+                position++;
+                node = new QueryNode.Term(token.word());
+            }
+            case PHRASE -> {
+                position++;
+                node = new QueryNode.PhraseMatch(token.phrase());
+            }
+            case OPEN -> {
+                position++;
+                node = group(andByDefault, depth + 1);
+                if (position < tokens.size() && tokens.get(position).kind() == Kind.CLOSE) position++;
+            }
+            default -> node = null;
+        }
+        return node == null ? null : new Clause(node, occur, false);
+    }
+
+    private void lex(String query) {
+        int i = 0;
+        int length = query.length();
+        while (i < length) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')') {
+                add(c == '(' ? Kind.OPEN : Kind.CLOSE, null, null);
+                i++;
+            } else if (c == '"') {
+                int close = query.indexOf('"', i + 1);
+                if (close < 0) {
+                    // an unmatched quote separates words like any other punctuation
+                    i++;
+                    continue;
+                }
+                List<String> terms = tokenize(query.substring(i + 1, close));
+                int window = 0;
+                i = close + 1;
+                Matcher matcher = WINDOW.matcher(query).region(i, length);
+                if (matcher.lookingAt()) {
+                    window = Integer.parseInt(matcher.group(1));
+                    i = matcher.end();
+                }
+                if (!terms.isEmpty()) add(Kind.PHRASE, null, new Phrase(terms, window));
+            } else if ((c == '+' || c == '-') && i + 1 < length && !Character.isWhitespace(query.charAt(i + 1))) {
+                add(c == '+' ? Kind.PLUS : Kind.MINUS, null, null);
+                i++;
+            } else {
+                int start = i;
+                while (i < length && !Character.isWhitespace(query.charAt(i)) && "()\"".indexOf(query.charAt(i)) < 0) i++;
+                String run = query.substring(start, i);
+                switch (run) {
+                    case "AND" -> add(Kind.AND, null, null);
+                    case "OR" -> add(Kind.OR, null, null);
+                    case "NOT" -> add(Kind.NOT, null, null);
+                    default -> {
+                        int before = tokens.size();
+                        for (String word : tokenizeWords(run)) add(Kind.WORD, word, null);
+                        // a + or - in front of punctuation has nothing to apply to
+                        if (tokens.size() == before && before > 0) {
+                            Kind last = tokens.get(before - 1).kind();
+                            if (last == Kind.PLUS || last == Kind.MINUS) tokens.remove(before - 1);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void add(Kind kind, String word, Phrase phrase) {
+        tokens.add(new Token(kind, word, phrase));
+    }
+
+    // Like tokenize, but keeps the wildcards '*' and '?' inside words. A leading wildcard is
+    // dropped (expansions need a literal prefix) and so is a trailing '?', which is far more often
+    // a question mark than a wildcard.
+    private static List<String> tokenizeWords(String q) {
+        List<String> words = new ArrayList<>();
+        for (String token : q.toLowerCase(Locale.ROOT).split("[^\\w*?]+")) {
+            int start = 0;
+            int end = token.length();
+            while (start < end && (token.charAt(start) == '*' || token.charAt(start) == '?')) start++;
+            while (end > start && token.charAt(end - 1) == '?') end--;
+            if (end - start > 0) words.add(token.substring(start, end));
+        }
+        return words;
+    }
+
+    private static List<String> tokenize(String q) {
+        return Arrays.stream(q.toLowerCase(Locale.ROOT).split("\\W+"))
+                .filter(s -> !s.isBlank()).toList();
+    }
+}
@@ -0,0 +1,19 @@
+package com.dreamteam.search.query;
+
+import java.util.Locale;
+
+public enum Ranking {
+    // sum of the IDF of the matched terms
+    IDF,
+    // Okapi BM25 over term frequencies and document lengths
+    BM25;
+
+    public static Ranking parse(String value, Ranking fallback) {
+        if (value == null || value.isBlank()) return fallback;
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException exception) {
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.dreamteam.search.query;
+
+import java.util.List;
+
+// Books of required. The optional iterators never add or remove books, only their score where
+// they match too; they are advanced only to the books that get scored.
+public final class RequiredOptional implements QueryIterator {
+    private final QueryIterator required;
+    private final QueryIterator[] optional;
+
+    public RequiredOptional(QueryIterator required, List<? extends QueryIterator> optional) {
+        this.required = required;
+        this.optional = optional.toArray(new QueryIterator[0]);
+    }
+
+    @Override
+    public int doc() {
+        return required.doc();
+    }
+
+    @Override
+    public int next() {
+        return required.next();
+    }
+
+    @Override
+    public int advance(int target) {
+        return required.advance(target);
+    }
+
+    @Override
+    public int cost() {
+        return required.cost();
+    }
+
+    @Override
+    public double score() {
+        int doc = required.doc();
+        double score = required.score();
+        for (QueryIterator iterator : optional) {
+            if (iterator.advance(doc) == doc) score += iterator.score();
+        }
+        return score;
+    }
+}
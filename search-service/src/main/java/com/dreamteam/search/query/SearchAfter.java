@@ -0,0 +1,34 @@
+package com.dreamteam.search.query;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// Position in the ranking (score descending, book id ascending) that a page continues from.
+// Clients get it as an opaque token; the score travels as its exact bits so ties resume exactly.
+public record SearchAfter(double score, int bookId) {
+    private static final String VERSION = "1";
+
+    // True if a hit with this score and book id ranks strictly after this position.
+    public boolean admits(int otherBookId, double otherScore) {
+        return otherScore < score || (otherScore == score && otherBookId > bookId);
+    }
+
+    public String encode() {
+        String raw = VERSION + ":" + Long.toHexString(Double.doubleToLongBits(score)) + ":" + bookId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static SearchAfter decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":");
+            if (parts.length != 3 || !parts[0].equals(VERSION)) {
+                throw new IllegalArgumentException("invalid search_after cursor");
+            }
+            return new SearchAfter(Double.longBitsToDouble(Long.parseUnsignedLong(parts[1], 16)),
+                    Integer.parseInt(parts[2]));
+        } catch (IllegalArgumentException exception) {
+            throw new IllegalArgumentException("invalid search_after cursor", exception);
+        }
+    }
+}
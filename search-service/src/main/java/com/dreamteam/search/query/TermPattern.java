@@ -0,0 +1,57 @@
+package com.dreamteam.search.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import com.dreamteam.search.index.TermsEnum;
+
+// A query term with wildcards: '*' matches any run of characters and '?' exactly one. The
+// literal prefix before the first wildcard bounds the dictionary range that is scanned, so
+// patterns must start with at least one literal character.
+public final class TermPattern {
+    private final String prefix;
+    private final Pattern pattern;
+
+    private TermPattern(String prefix, Pattern pattern) {
+        this.prefix = prefix;
+        this.pattern = pattern;
+    }
+
+    public static boolean isPattern(String term) {
+        return term.indexOf('*') >= 0 || term.indexOf('?') >= 0;
+    }
+
+    public static TermPattern compile(String term) {
+        StringBuilder regex = new StringBuilder();
+        int firstWildcard = -1;
+        int literalStart = 0;
+        for (int i = 0; i < term.length(); i++) {
+            char c = term.charAt(i);
+            if (c != '*' && c != '?') continue;
+            if (firstWildcard < 0) firstWildcard = i;
+            if (i > literalStart) regex.append(Pattern.quote(term.substring(literalStart, i)));
+            regex.append(c == '*' ? ".*" : ".");
+            literalStart = i + 1;
+        }
+        if (literalStart < term.length()) regex.append(Pattern.quote(term.substring(literalStart)));
+
+        String prefix = firstWildcard < 0 ? term : term.substring(0, firstWildcard);
+        // a bare trailing '*' accepts every term in the prefix range
+        boolean prefixOnly = firstWildcard == term.length() - 1 && term.endsWith("*");
+        return new TermPattern(prefix, prefixOnly ? null : Pattern.compile(regex.toString()));
+    }
+
+    // Up to limit dictionary terms matching the pattern, in term order.
+    public List<String> expand(TermsEnum terms, int limit) {
+        List<String> matches = new ArrayList<>();
+        if (limit <= 0 || !terms.seekCeil(prefix)) return matches;
+
+        do {
+            String term = terms.term();
+            if (!term.startsWith(prefix)) break;
+            if (pattern == null || pattern.matcher(term).matches()) matches.add(term);
+        } while (matches.size() < limit && terms.next());
+        return matches;
+    }
+}
@@ -0,0 +1,59 @@
+package com.dreamteam.search.query;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.dreamteam.search.SearchEngine.ScoredDoc;
+
+// Keeps the k best hits seen so far (higher score first, lower book id on ties) in a min-heap
+// whose root is the hit a newcomer has to beat. With a search_after position only hits ranking
+// after it are kept, so a deep page costs one pass and k entries like the first page.
+public final class TopKHeap {
+    public static final Comparator<ScoredDoc> RANKING =
+            Comparator.comparingDouble((ScoredDoc doc) -> doc.score).reversed()
+                    .thenComparingInt(doc -> doc.bookId);
+
+    private final int k;
+    private final SearchAfter after;
+    private final PriorityQueue<ScoredDoc> heap;
+
+    public TopKHeap(int k) {
+        this(k, null);
+    }
+
+    public TopKHeap(int k, SearchAfter after) {
+        this.k = k;
+        this.after = after;
+        this.heap = new PriorityQueue<>(Math.max(1, Math.min(k, 1024)), RANKING.reversed());
+    }
+
+    public boolean isFull() {
+        return heap.size() >= k;
+    }
+
+    // Score a hit must strictly exceed to enter once the heap is full.
+    public double threshold() {
+        return isFull() ? heap.peek().score : Double.NEGATIVE_INFINITY;
+    }
+
+    public boolean competitive(int bookId, double score) {
+        if (after != null && !after.admits(bookId, score)) return false;
+        if (!isFull()) return true;
+        ScoredDoc worst = heap.peek();
+        return score > worst.score || (score == worst.score && bookId < worst.bookId);
+    }
+
+    public void offer(int bookId, double score) {
+        if (k <= 0 || !competitive(bookId, score)) return;
+        if (isFull()) heap.poll();
+        heap.add(new ScoredDoc(bookId, score));
+    }
+
+    public List<ScoredDoc> sorted() {
+        List<ScoredDoc> docs = new ArrayList<>(heap);
+        docs.sort(RANKING);
+        return docs;
+    }
+}
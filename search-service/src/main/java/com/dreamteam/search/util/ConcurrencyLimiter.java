@@ -0,0 +1,57 @@
+package com.dreamteam.search.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Caps the requests in flight. A request over the cap queues (first come, first served) for at
+// most maxWaitMillis and is turned away after that, so a load spike costs a short wait or a quick
+// rejection instead of piling up threads, connections and latency. A limit of 0 disables the cap.
+public class ConcurrencyLimiter {
+    private final int limit;
+    private final long maxWaitMillis;
+    private final Semaphore permits;
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public ConcurrencyLimiter(int limit, long maxWaitMillis) {
+        this.limit = Math.max(0, limit);
+        this.maxWaitMillis = Math.max(0, maxWaitMillis);
+        this.permits = this.limit > 0 ? new Semaphore(this.limit, true) : null;
+    }
+
+    // True if the caller may proceed and must then call release(); false if it was rejected.
+    public boolean acquire() {
+        if (permits == null) {
+            admitted.incrementAndGet();
+            return true;
+        }
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        (acquired ? admitted : rejected).incrementAndGet();
+        return acquired;
+    }
+
+    public void release() {
+        if (permits != null) permits.release();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("limit", limit);
+        stats.put("maxWaitMillis", maxWaitMillis);
+        stats.put("inFlight", permits == null ? 0 : limit - permits.availablePermits());
+        stats.put("waiting", permits == null ? 0 : permits.getQueueLength());
+        stats.put("admitted", admitted.get());
+        stats.put("rejected", rejected.get());
+        return stats;
+    }
+}
@@ -0,0 +1,95 @@
+package com.dreamteam.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.dreamteam.search.index.IndexSnapshot;
+import com.dreamteam.search.query.Ranking;
+import com.dreamteam.search.query.SearchAfter;
+
+class SearchEngineTopKTest {
+
+    private static final String[] TERMS = {"whale", "ship", "sea", "captain", "harpoon", "storm"};
+    private static final List<String> QUERIES = List.of(
+            "whale ship sea captain harpoon storm",
+            "whale storm",
+            "captain",
+            "whale OR (ship AND sea)",
+            "sea ship -storm");
+
+    @TempDir
+    Path dir;
+
+    private SearchEngine engine;
+    private IndexSnapshot snapshot;
+
+    @BeforeEach
+    void writeIndex() throws IOException {
+        // Every posting counts once in the JSON index, so books with the same terms tie exactly
+        // and only the book id orders them.
+        Random random = new Random(42);
+        StringBuilder json = new StringBuilder("{");
+        for (int t = 0; t < TERMS.length; t++) {
+            TreeSet<Integer> books = new TreeSet<>();
+            int count = 50 + random.nextInt(600);
+            while (books.size() < count) books.add(1 + random.nextInt(2000));
+            json.append(t == 0 ? "" : ",").append('"').append(TERMS[t]).append("\":").append(books);
+        }
+        Path index = dir.resolve("index.json");
+        Files.writeString(index, json.append('}'), StandardCharsets.UTF_8);
+
+        engine = new SearchEngine(index, dir.resolve("segments"));
+        snapshot = engine.snapshot();
+    }
+
+    @Test
+    void topKIsThePrefixOfTheFullRanking() {
+        for (String query : QUERIES) {
+            for (String mode : List.of("and", "or")) {
+                List<SearchEngine.ScoredDoc> full = engine.search(snapshot, query, mode, Ranking.IDF);
+                for (int k : new int[] {1, 7, 100, 5000}) {
+                    SearchEngine.TopDocs top = engine.searchTopK(snapshot, query, mode, Ranking.IDF, k);
+                    String label = query + " / " + mode + " / k=" + k;
+                    assertEquals(hits(full.subList(0, Math.min(k, full.size()))), hits(top.docs()), label);
+                    if (top.totalExact()) assertEquals(full.size(), top.totalHits(), label);
+                    else assertTrue(top.totalHits() <= full.size(), label);
+                }
+            }
+        }
+    }
+
+    @Test
+    void searchAfterPagesThroughTheFullRankingWithoutGapsOrRepeats() {
+        for (String query : QUERIES) {
+            List<SearchEngine.ScoredDoc> full = engine.search(snapshot, query, "or", Ranking.IDF);
+            List<SearchEngine.ScoredDoc> paged = new ArrayList<>();
+            SearchAfter after = null;
+            while (true) {
+                List<SearchEngine.ScoredDoc> page = engine.searchTopK(snapshot, query, "or", Ranking.IDF, 37,
+                        null, after).docs();
+                paged.addAll(page);
+                if (page.size() < 37) break;
+                SearchEngine.ScoredDoc last = page.get(page.size() - 1);
+                after = SearchAfter.decode(new SearchAfter(last.score, last.bookId).encode());
+            }
+            assertEquals(hits(full), hits(paged), query);
+        }
+    }
+
+    private static List<String> hits(List<SearchEngine.ScoredDoc> docs) {
+        return docs.stream().map(doc -> doc.bookId + ":" + doc.score).toList();
+    }
+}
@@ -0,0 +1,75 @@
+package com.dreamteam.search.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.dreamteam.search.query.DocIterator;
+
+class DocIdBitmapTest {
+
+    private static final int RANGE = 4 << 16;
+
+    @Test
+    void andAndOrMatchBitSetsAcrossArrayAndBitmapContainers() {
+        Random random = new Random(11);
+        for (int round = 0; round < 20; round++) {
+            BitSet left = randomSet(random);
+            BitSet right = randomSet(random);
+            DocIdBitmap a = DocIdBitmap.of(left.stream().toArray());
+            DocIdBitmap b = DocIdBitmap.of(right.stream().toArray());
+
+            BitSet and = (BitSet) left.clone();
+            and.and(right);
+            assertSame(and, a.and(b));
+            assertSame(and, b.and(a));
+
+            BitSet or = (BitSet) left.clone();
+            or.or(right);
+            assertSame(or, DocIdBitmap.or(List.of(a, b)));
+            assertSame(left, a);
+        }
+    }
+
+    @Test
+    void cursorAdvancesAcrossContainers() {
+        DocIdBitmap bitmap = DocIdBitmap.of(new int[] {5, 70_000, 70_001, 200_000, 5});
+        DocIdBitmap.Cursor cursor = bitmap.cursor();
+        assertEquals(5, cursor.doc());
+        assertEquals(70_000, cursor.advance(6));
+        assertEquals(70_001, cursor.next());
+        assertEquals(200_000, cursor.advance(70_002));
+        assertEquals(DocIterator.NO_MORE_DOCS, cursor.advance(200_001));
+        assertEquals(4, bitmap.cardinality());
+    }
+
+    // Per 65536-id container: empty, sparse (array) or dense (bitmap), chosen at random.
+    private static BitSet randomSet(Random random) {
+        BitSet set = new BitSet(RANGE);
+        for (int base = 0; base < RANGE; base += 1 << 16) {
+            int count = switch (random.nextInt(3)) {
+                case 0 -> 0;
+                case 1 -> 1 + random.nextInt(4096);
+                default -> 4097 + random.nextInt(30_000);
+            };
+            for (int i = 0; i < count; i++) set.set(base + random.nextInt(1 << 16));
+        }
+        return set;
+    }
+
+    private static void assertSame(BitSet expected, DocIdBitmap actual) {
+        assertEquals(expected.cardinality(), actual.cardinality());
+        List<Integer> walked = new ArrayList<>();
+        DocIdBitmap.Cursor cursor = actual.cursor();
+        for (int doc = cursor.doc(); doc != DocIterator.NO_MORE_DOCS; doc = cursor.next()) walked.add(doc);
+        assertEquals(expected.stream().boxed().toList(), walked);
+        for (int probe = 0; probe < RANGE; probe += 97) {
+            assertEquals(expected.get(probe), actual.contains(probe), "contains(" + probe + ")");
+        }
+    }
+}
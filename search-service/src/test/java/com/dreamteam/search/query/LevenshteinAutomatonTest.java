@@ -0,0 +1,113 @@
+package com.dreamteam.search.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+import com.dreamteam.search.index.TermsEnum;
+
+class LevenshteinAutomatonTest {
+
+    private static final String[] DICTIONARY = dictionary();
+
+    @Test
+    void expandFindsExactlyTheTermsWithinTheEditDistance() {
+        for (String word : List.of("a", "ab", "abc", "cab", "bbbb", "whale", "wahle", "cat")) {
+            for (int maxEdits = 1; maxEdits <= 2; maxEdits++) {
+                List<LevenshteinAutomaton.Expansion> expected = new ArrayList<>();
+                for (String term : DICTIONARY) {
+                    int distance = editDistance(word, term);
+                    if (distance <= maxEdits) expected.add(new LevenshteinAutomaton.Expansion(term, distance));
+                }
+
+                LevenshteinAutomaton automaton = new LevenshteinAutomaton(word, maxEdits);
+                assertEquals(expected, automaton.expand(new ArrayTermsEnum(DICTIONARY), Integer.MAX_VALUE),
+                        word + "~" + maxEdits);
+                for (String term : DICTIONARY) {
+                    int distance = editDistance(word, term);
+                    assertEquals(distance <= maxEdits ? distance : -1, automaton.distance(term), word + " / " + term);
+                }
+            }
+        }
+    }
+
+    @Test
+    void pastTheLimitTheClosestTermsAreKept() {
+        // the closest terms, ties going to the lower term, returned in term order
+        List<LevenshteinAutomaton.Expansion> expected = Arrays.stream(DICTIONARY)
+                .map(term -> new LevenshteinAutomaton.Expansion(term, editDistance("cat", term)))
+                .filter(expansion -> expansion.distance() <= 2)
+                .sorted(Comparator.comparingInt(LevenshteinAutomaton.Expansion::distance)
+                        .thenComparing(LevenshteinAutomaton.Expansion::term))
+                .limit(5)
+                .sorted(Comparator.comparing(LevenshteinAutomaton.Expansion::term))
+                .toList();
+        assertEquals(expected, new LevenshteinAutomaton("cat", 2).expand(new ArrayTermsEnum(DICTIONARY), 5));
+    }
+
+    // Every string of up to four letters over a, b, c, t, plus a few longer words.
+    private static String[] dictionary() {
+        TreeSet<String> terms = new TreeSet<>(List.of("whale", "whales", "while", "wale", "shale", "cart", "chart"));
+        List<String> level = List.of("");
+        for (int length = 1; length <= 4; length++) {
+            List<String> longer = new ArrayList<>();
+            for (String prefix : level) {
+                for (char c : "abct".toCharArray()) longer.add(prefix + c);
+            }
+            terms.addAll(longer);
+            level = longer;
+        }
+        return terms.toArray(new String[0]);
+    }
+
+    private static int editDistance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) previous[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    private static final class ArrayTermsEnum implements TermsEnum {
+        private final String[] terms;
+        private int index;
+
+        ArrayTermsEnum(String[] sortedTerms) {
+            this.terms = sortedTerms;
+            this.index = sortedTerms.length;
+        }
+
+        @Override
+        public boolean seekCeil(String target) {
+            int found = Arrays.binarySearch(terms, target);
+            index = found >= 0 ? found : -found - 1;
+            return index < terms.length;
+        }
+
+        @Override
+        public boolean next() {
+            if (index < terms.length) index++;
+            return index < terms.length;
+        }
+
+        @Override
+        public String term() {
+            return index < terms.length ? terms[index] : null;
+        }
+    }
+}
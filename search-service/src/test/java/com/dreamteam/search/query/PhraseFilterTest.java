@@ -0,0 +1,112 @@
+package com.dreamteam.search.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import com.dreamteam.search.index.PositionReader;
+import com.dreamteam.search.index.Postings;
+import com.dreamteam.search.index.TermIndex;
+import com.dreamteam.search.index.TermsEnum;
+
+class PhraseFilterTest {
+
+    private static final Map<Integer, String> BOOKS = Map.of(
+            1, "the old man and the sea",
+            2, "the man was old",
+            3, "an old and weary man by the sea",
+            4, "old old man");
+
+    @Test
+    void exactPhrasesNeedConsecutiveTokensInOrder() {
+        assertEquals(List.of(1, 4), accepted(new Phrase(List.of("old", "man"), 0)));
+        assertEquals(List.of(), accepted(new Phrase(List.of("man", "old"), 0)));
+        assertEquals(List.of(1), accepted(new Phrase(List.of("the", "old", "man"), 0)));
+        assertEquals(List.of(1, 3), accepted(new Phrase(List.of("the", "sea"), 0)));
+    }
+
+    @Test
+    void windowedPhrasesMatchWithinTheWindowInAnyOrder() {
+        assertEquals(List.of(1, 2, 4), accepted(new Phrase(List.of("old", "man"), 2)));
+        assertEquals(List.of(1, 2, 3, 4), accepted(new Phrase(List.of("man", "old"), 3)));
+        // book 1: old at 1, sea at 5
+        assertEquals(List.of(1), accepted(new Phrase(List.of("old", "sea"), 4)));
+        assertEquals(List.of(), accepted(new Phrase(List.of("old", "sea"), 3)));
+    }
+
+    @Test
+    void everyPhraseOfTheQueryMustMatch() {
+        PhraseFilter filter = PhraseFilter.create(new PositionIndex(),
+                List.of(new Phrase(List.of("old", "man"), 0), new Phrase(List.of("the", "sea"), 0)));
+        assertEquals(List.of(1), IntStream.rangeClosed(1, 4).filter(filter::accepts).boxed().toList());
+    }
+
+    @Test
+    void noFilterWithoutPositions() {
+        assertNull(PhraseFilter.create(new PositionIndex() {
+            @Override
+            public PositionReader positions(String term) {
+                return null;
+            }
+        }, List.of(new Phrase(List.of("old", "man"), 0))));
+    }
+
+    private static List<Integer> accepted(Phrase phrase) {
+        PhraseFilter filter = PhraseFilter.create(new PositionIndex(), List.of(phrase));
+        return IntStream.rangeClosed(1, 4).filter(filter::accepts).boxed().toList();
+    }
+
+    // Positions of the books above; nothing else of the index is needed.
+    private static class PositionIndex implements TermIndex {
+
+        @Override
+        public PositionReader positions(String term) {
+            return bookId -> {
+                String[] tokens = BOOKS.get(bookId).split(" ");
+                int[] found = IntStream.range(0, tokens.length).filter(i -> tokens[i].equals(term)).toArray();
+                return found.length == 0 ? null : found;
+            };
+        }
+
+        @Override
+        public Postings postings(String term) {
+            return Postings.EMPTY;
+        }
+
+        @Override
+        public TermsEnum terms() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int docCount() {
+            return BOOKS.size();
+        }
+
+        @Override
+        public int termCount() {
+            return 0;
+        }
+
+        @Override
+        public int docLength(int bookId) {
+            return 0;
+        }
+
+        @Override
+        public double averageDocLength() {
+            return 0;
+        }
+
+        @Override
+        public int minDocLength() {
+            return 0;
+        }
+    }
+}
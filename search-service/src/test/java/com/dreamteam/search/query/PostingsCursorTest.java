@@ -0,0 +1,50 @@
+package com.dreamteam.search.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.dreamteam.search.index.Postings;
+
+class PostingsCursorTest {
+
+    @Test
+    void gallopingAdvanceLandsWhereALinearScanDoes() {
+        Random random = new Random(7);
+        for (int round = 0; round < 50; round++) {
+            int[] docs = random.ints(1 + random.nextInt(3000), 0, 100_000).sorted().distinct().toArray();
+            PostingsCursor cursor = cursor(docs);
+            int expected = 0;
+
+            // targets at, behind and far ahead of the cursor, including past the last doc
+            int target = -1;
+            while (cursor.doc() != DocIterator.NO_MORE_DOCS) {
+                target += random.nextBoolean() ? random.nextInt(8) : random.nextInt(20_000) - 1000;
+                while (expected < docs.length && docs[expected] < target) expected++;
+                int want = expected < docs.length ? docs[expected] : DocIterator.NO_MORE_DOCS;
+                assertEquals(want, cursor.advance(target), "advance(" + target + ")");
+                assertEquals(want, cursor.doc());
+            }
+        }
+    }
+
+    @Test
+    void advanceNeverMovesBackwardsAndStopsAtTheEnd() {
+        PostingsCursor cursor = cursor(new int[] {3, 9, 27, 81});
+        assertEquals(27, cursor.advance(10));
+        assertEquals(27, cursor.advance(4));
+        assertEquals(27, cursor.advance(27));
+        assertEquals(81, cursor.next());
+        assertEquals(DocIterator.NO_MORE_DOCS, cursor.advance(82));
+        assertEquals(DocIterator.NO_MORE_DOCS, cursor.advance(100));
+    }
+
+    private static PostingsCursor cursor(int[] docs) {
+        int[] freqs = new int[docs.length];
+        Arrays.fill(freqs, 1);
+        return new PostingsCursor(new Postings(docs, freqs), (doc, freq) -> 1.0, 1.0);
+    }
+}
@@ -0,0 +1,79 @@
+package com.dreamteam.search.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class QueryParserTest {
+
+    @Test
+    void andBindsTighterThanOr() {
+        assertEquals(bool(List.of(), List.of(term("a"), bool(List.of(term("b"), term("c")), List.of(), List.of())),
+                        List.of()),
+                parse("a OR b AND c", false));
+        assertEquals(bool(List.of(), List.of(bool(List.of(term("a"), term("b")), List.of(), List.of()), term("c")),
+                        List.of()),
+                parse("a AND b OR c", false));
+    }
+
+    @Test
+    void clausesWithoutAnOperatorTakeTheSearchMode() {
+        assertEquals(bool(List.of(term("a"), term("b")), List.of(), List.of()), parse("a b", true));
+        assertEquals(bool(List.of(), List.of(term("a"), term("b")), List.of()), parse("a b", false));
+        // with AND as the default, "a b OR c" is (a AND b) OR c
+        assertEquals(bool(List.of(), List.of(bool(List.of(term("a"), term("b")), List.of(), List.of()), term("c")),
+                        List.of()),
+                parse("a b OR c", true));
+    }
+
+    @Test
+    void parenthesesGroupAndPrefixesRequireOrExclude() {
+        assertEquals(bool(List.of(bool(List.of(), List.of(term("a"), term("b")), List.of()), term("c")), List.of(),
+                        List.of()),
+                parse("(a OR b) c", true));
+        assertEquals(bool(List.of(term("a")), List.of(term("b")), List.of(term("c"))), parse("+a b -c", false));
+        assertEquals(bool(List.of(), List.of(), List.of(term("a"))), parse("NOT a", true));
+    }
+
+    @Test
+    void phrasesKeepTheirWindowAndStayRequiredInOrQueries() {
+        QueryNode phrase = new QueryNode.PhraseMatch(new Phrase(List.of("old", "man"), 3));
+        assertEquals(phrase, parse("\"Old Man\"~3", false));
+        assertEquals(bool(List.of(phrase), List.of(term("sea")), List.of()), parse("\"old man\"~3 sea", false));
+    }
+
+    @Test
+    void malformedInputIsNeverRejected() {
+        assertEquals(term("a"), parse("AND OR ) ( a", true));
+        assertEquals(term("a"), parse("a -", true));
+        assertEquals(term("a"), parse("(((a", true));
+        assertEquals(bool(List.of(term("a"), term("b")), List.of(), List.of()), parse("\"a b", true));
+        assertNull(parse("AND ( ) OR NOT", true));
+        assertNull(parse("", false));
+    }
+
+    @Test
+    void lowerCaseOperatorsAreWords() {
+        QueryParser parser = new QueryParser("war and peace");
+        assertFalse(parser.hasOperators());
+        assertEquals(List.of("war", "and", "peace"), parser.words());
+        assertTrue(new QueryParser("war AND peace").hasOperators());
+    }
+
+    private static QueryNode parse(String query, boolean andByDefault) {
+        return new QueryParser(query).parse(andByDefault);
+    }
+
+    private static QueryNode term(String word) {
+        return new QueryNode.Term(word);
+    }
+
+    private static QueryNode bool(List<QueryNode> must, List<QueryNode> should, List<QueryNode> mustNot) {
+        return new QueryNode.Bool(must, should, mustNot);
+    }
+}